@@ -0,0 +1,227 @@
+package pacman.benchmark;
+
+import java.util.EnumMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pacman.controllers.examples.NearestPillPacMan;
+import pacman.controllers.examples.algorithms.Evaluation;
+import pacman.game.Game;
+import pacman.game.Constants.DM;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.internal.MazeRegistry;
+import pacman.game.internal.PathsCache;
+
+/*
+ * JMH benchmarks of the hot paths of the engine and of the path queries, for every maze and for three phases of a
+ * level (see Phase). Every benchmark cycles through a fixed set of inputs (states, node pairs and so on) taken from
+ * a game played up to the phase, so the time measured is that of a representative mix rather than of one input the
+ * branch predictor learns by heart. See pom.xml for how to build and run them; JMH's options select the
+ * benchmarks and parameters (e.g., -p maze=0) and write the results to a file (e.g., -rf csv -rff results.csv).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3,time=1)
+@Measurement(iterations=5,time=1)
+@Fork(1)
+public class EngineBenchmark
+{
+	//the number of node pairs the path queries cycle through (a power of 2) and the number of states
+	private static final int NUM_INPUTS=1<<12;
+	private static final int NUM_STATES=32;
+	//the number of ticks a game is advanced for before it is reset to one of the states
+	private static final int TICKS_PER_RESET=64;
+	private static final MOVE[] MOVES={MOVE.UP,MOVE.RIGHT,MOVE.DOWN,MOVE.LEFT};
+
+	/*
+	 * The phases of a level the states of a benchmark are taken from, by the share of pills eaten.
+	 */
+	public enum Phase
+	{
+		START(0),MIDGAME(0.5),ENDGAME(0.85);
+
+		final double eaten;
+
+		Phase(double eaten)
+		{
+			this.eaten=eaten;
+		}
+	}
+
+	@Param({"0","1","2","3"})
+	public int maze;
+
+	@Param({"START","MIDGAME","ENDGAME"})
+	public Phase phase;
+
+	private Fixture fixture;
+	private int invocation;
+
+	@Setup
+	public void setUp()
+	{
+		fixture=new Fixture(maze,phase);
+		invocation=0;
+	}
+
+	@Benchmark
+	public int advanceGame()
+	{
+		int i=invocation++;
+
+		if(i%TICKS_PER_RESET==0)
+			fixture.states[(i/TICKS_PER_RESET)%NUM_STATES].copyInto(fixture.game);
+
+		fixture.game.advanceGame(MOVES[(i>>>3)&3],fixture.ghostMoves);
+
+		return fixture.game.getTotalTime();
+	}
+
+	@Benchmark
+	public Game copy()
+	{
+		return fixture.states[invocation++%NUM_STATES].copy();
+	}
+
+	@Benchmark
+	public int getShortestPathDistance()
+	{
+		int j=invocation++&(NUM_INPUTS-1);
+
+		return fixture.game.getShortestPathDistance(fixture.from[j],fixture.to[j]);
+	}
+
+	@Benchmark
+	public int getShortestPathDistanceWithMove()
+	{
+		int j=invocation++&(NUM_INPUTS-1);
+
+		return fixture.game.getShortestPathDistance(fixture.from[j],fixture.to[j],fixture.lastMoves[j]);
+	}
+
+	@Benchmark
+	public int[] getPathFromA2B()
+	{
+		int j=invocation++&(NUM_INPUTS-1);
+
+		return fixture.cache.getPathFromA2B(fixture.from[j],fixture.to[j]);
+	}
+
+	@Benchmark
+	public int getClosestNodeIndexFromNodeIndex()
+	{
+		int i=invocation++%NUM_STATES;
+		Game state=fixture.states[i];
+
+		return state.getClosestNodeIndexFromNodeIndex(state.getPacmanCurrentNodeIndex(),fixture.pills[i],DM.PATH);
+	}
+
+	@Benchmark
+	public int evaluateGameState()
+	{
+		return Evaluation.evaluateGameState(fixture.states[invocation++%NUM_STATES]);
+	}
+
+	@Benchmark
+	public int[] getActivePillsIndices()
+	{
+		return fixture.states[invocation++%NUM_STATES].getActivePillsIndices();
+	}
+
+	/*
+	 * The inputs of the benchmarks for a maze and phase: states taken from a game played up to the phase, random
+	 * pairs of nodes (with a move that a ghost may have made to get to the first) and the active pills of each
+	 * state. The game is played by NearestPillPacMan against ghosts that flee from her, so she lives to see the
+	 * end of the level, and is the same in every run.
+	 */
+	static class Fixture
+	{
+		final Game[] states=new Game[NUM_STATES];
+		final int[][] pills=new int[NUM_STATES][];
+		final int[] from=new int[NUM_INPUTS], to=new int[NUM_INPUTS];
+		final MOVE[] lastMoves=new MOVE[NUM_INPUTS];
+		final EnumMap<GHOST,MOVE> ghostMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
+		final PathsCache cache;
+		final Game game;
+
+		Fixture(int mazeIndex,Phase phase)
+		{
+			Game game=new Game(mazeIndex,mazeIndex);
+			NearestPillPacMan pacMan=new NearestPillPacMan();
+			int numPills=game.getNumberOfPills();
+
+			while(game.getNumberOfActivePills()>numPills*(1-phase.eaten))
+				advance(game,pacMan,mazeIndex);
+
+			for(int i=0;i<NUM_STATES;i++)
+			{
+				states[i]=game.copy();
+				pills[i]=game.getActivePillsIndices();
+
+				for(int j=0;j<4;j++)
+					advance(game,pacMan,mazeIndex);
+			}
+
+			for(GHOST ghost : GHOST.values())
+				ghostMoves.put(ghost,states[0].getGhostLastMoveMade(ghost));
+
+			pick(game,new Random(mazeIndex));
+
+			cache=MazeRegistry.getCache(mazeIndex);
+			this.game=states[0].copy();
+		}
+
+		/*
+		 * Picks the pairs of nodes at random among the nodes an agent can move from, which excludes those of the
+		 * lair, and the last move among those that lead to the first node, i.e., the opposites of its possible
+		 * moves. Every such pair has a path for Ms Pac-Man and for the ghosts.
+		 */
+		private void pick(Game game,Random rnd)
+		{
+			int[] nodes=new int[game.getNumberOfNodes()];
+			int numNodes=0;
+
+			for(int node=0;node<nodes.length;node++)
+				if(game.getPossibleMoves(node).length>0)
+					nodes[numNodes++]=node;
+
+			for(int i=0;i<NUM_INPUTS;i++)
+			{
+				from[i]=nodes[rnd.nextInt(numNodes)];
+				to[i]=nodes[rnd.nextInt(numNodes)];
+
+				MOVE[] moves=game.getPossibleMoves(from[i]);
+				lastMoves[i]=moves[rnd.nextInt(moves.length)].opposite();
+			}
+		}
+
+		private static void advance(Game game,NearestPillPacMan pacMan,int mazeIndex)
+		{
+			if(game.gameOver() || game.getMazeIndex()!=mazeIndex)
+				throw new IllegalStateException("The level of maze "+mazeIndex+" ended before the phase was reached");
+
+			EnumMap<GHOST,MOVE> ghostMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
+
+			for(GHOST ghost : GHOST.values())
+				if(game.doesGhostRequireAction(ghost))
+					ghostMoves.put(ghost,game.getApproximateNextMoveAwayFromTarget(game.getGhostCurrentNodeIndex(ghost),
+							game.getPacmanCurrentNodeIndex(),game.getGhostLastMoveMade(ghost),DM.PATH));
+
+			game.advanceGame(pacMan.getMove(game,-1),ghostMoves);
+		}
+	}
+}
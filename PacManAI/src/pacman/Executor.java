@@ -1,26 +1,36 @@
 package pacman;
 
 import static pacman.game.Constants.DELAY;
-import static pacman.game.Constants.INTERVAL_WAIT;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 import pacman.controllers.Controller;
+import pacman.controllers.ControllerRuntime;
 import pacman.controllers.HumanController;
+import pacman.controllers.MoveStats;
 import pacman.controllers.examples.StarterGhosts;
 import pacman.controllers.examples.StarterPacMan;
+import pacman.experiment.ExperimentStats;
+import pacman.experiment.ParallelExperiment;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 import pacman.game.GameView;
+import pacman.game.MoveRecorder;
+import pacman.game.MoveReplay;
+import pacman.game.ReplayReader;
+import pacman.game.ReplayWriter;
 
 /**
  * This class may be used to execute the game in timed or un-timed modes, with
@@ -30,6 +40,9 @@ import pacman.game.GameView;
  * (although you may create sub-packages in these packages).
  */
 public class Executor {
+	private ControllerRuntime controllerRuntime = ControllerRuntime.getDefault();
+	private String moveStatsFile = "move_stats.csv";
+
 	/**
 	 * The main method. Several options are listed - simply remove comments to
 	 * use the option you want.
@@ -46,6 +59,22 @@ public class Executor {
 		 * RandomGhosts(),numTrials);
 		 */
 
+		/*
+		 * //run many games on all cores; the results only depend on the
+		 * master seed. int numTrials=10000; long seed=0;
+		 * exec.runExperiment(RandomPacMan::new,RandomGhosts::new,numTrials,
+		 * seed,Runtime.getRuntime().availableProcessors());
+		 */
+
+		/*
+		 * //play every Ms Pac-Man controller against every ghosts controller;
+		 * the result of each game is appended to the file as it comes in. see
+		 * Tournament.main() for the example controllers. new
+		 * Tournament(Runtime.getRuntime().availableProcessors()).addPacMan(
+		 * "RandomPacMan",RandomPacMan::new).addGhosts("RandomGhosts",
+		 * RandomGhosts::new).run(100,0,"tournament.csv");
+		 */
+
 		/*
 		 * //run a game in synchronous mode: game waits until controllers
 		 * respond. int delay=5; boolean visual=true; exec.runGame(new
@@ -72,11 +101,45 @@ public class Executor {
 
 		/*
 		 * //run game in asynchronous mode and record it to file for replay at a
-		 * later stage. boolean visual=true; String fileName="replay.txt";
+		 * later stage. boolean visual=true; String fileName="replay.bin";
 		 * exec.runGameTimedRecorded(new HumanController(new
 		 * KeyBoardInput()),new RandomGhosts(),visual,fileName);
 		 * //exec.replayGame(fileName,visual);
 		 */
+
+		/*
+		 * //as above, but only record the moves: the replay re-simulates the
+		 * game from its seed, so the file is a fraction of the size. boolean
+		 * visual=true; String fileName="replay.pmv";
+		 * exec.runGameTimedMoveRecorded(new HumanController(new
+		 * KeyBoardInput()),new RandomGhosts(),visual,fileName);
+		 * //exec.replayGame(fileName,visual);
+		 */
+	}
+
+	/**
+	 * Sets the runtime on which the controllers compute their moves in the timed
+	 * modes. By default, the shared virtual runtime is used, so many timed games
+	 * may run at once, each on a thread of its own.
+	 *
+	 * @param controllerRuntime
+	 *            The runtime, e.g. ControllerRuntime.pooled(4)
+	 */
+	public void setControllerRuntime(ControllerRuntime controllerRuntime) {
+		this.controllerRuntime = controllerRuntime;
+	}
+
+	/**
+	 * Sets the file the move statistics of the controllers (see MoveStats) are
+	 * appended to at the end of every game in a timed mode, one line per
+	 * controller. They are printed in any case.
+	 *
+	 * @param moveStatsFile
+	 *            The CSV file ("move_stats.csv" by default), or null to only
+	 *            print the statistics
+	 */
+	public void setMoveStatsFile(String moveStatsFile) {
+		this.moveStatsFile = moveStatsFile;
 	}
 
 	/**
@@ -98,15 +161,18 @@ public class Executor {
 			int trials) {
 		double avgScore = 0;
 
+		Game.warmUp();
+
 		Random rnd = new Random(0);
+		long secret = ParallelExperiment.secret(0);
 		Game game;
 
 		for (int i = 0; i < trials; i++) {
-			game = new Game(rnd.nextLong());
+			game = new Game(rnd.nextLong(), 0, secret);
 
 			while (!game.gameOver()) {
-				game.advanceGame(pacManController.getMove(game.copy(), System.currentTimeMillis() + DELAY),
-						ghostController.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+				game.advanceGame(pacManController.getMove(game.getReadOnlyView(), System.currentTimeMillis() + DELAY),
+						ghostController.getMove(game.getReadOnlyView(), System.currentTimeMillis() + DELAY));
 			}
 
 			avgScore += game.getScore();
@@ -116,6 +182,34 @@ public class Executor {
 		System.out.println(avgScore / trials);
 	}
 
+	/**
+	 * Like runExperiment() above, but the trials are played on several threads.
+	 * Every trial uses new controllers created by the factories and a seed
+	 * derived from the master seed, so the statistics are the same whatever
+	 * the number of threads (see ParallelExperiment).
+	 *
+	 * @param pacManFactory
+	 *            Creates the Pac-Man controller of a trial
+	 * @param ghostFactory
+	 *            Creates the Ghosts controller of a trial
+	 * @param trials
+	 *            The number of trials to be executed
+	 * @param masterSeed
+	 *            The seed the seeds of the trials are derived from
+	 * @param threads
+	 *            The number of threads
+	 * @return The statistics of the trials
+	 */
+	public ExperimentStats runExperiment(Supplier<? extends Controller<MOVE>> pacManFactory,
+			Supplier<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory, int trials, long masterSeed,
+			int threads) {
+		ExperimentStats stats = new ParallelExperiment(pacManFactory, ghostFactory, threads).run(trials, masterSeed);
+
+		System.out.print(stats);
+
+		return stats;
+	}
+
 	/**
 	 * Run a game in asynchronous mode: the game waits until a move is returned.
 	 * In order to slow thing down in case the controllers return very quickly,
@@ -133,6 +227,8 @@ public class Executor {
 	 */
 	public void runGame(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController,
 			boolean visual, int delay) {
+		Game.warmUp();
+
 		Game game = new Game(0);
 
 		GameView gv = null;
@@ -141,7 +237,7 @@ public class Executor {
 			gv = new GameView(game).showGame();
 
 		while (!game.gameOver()) {
-			game.advanceGame(pacManController.getMove(game.copy(), -1), ghostController.getMove(game.copy(), -1));
+			game.advanceGame(pacManController.getMove(game.getReadOnlyView(), -1), ghostController.getMove(game.getReadOnlyView(), -1));
 
 			try {
 				Thread.sleep(delay);
@@ -167,6 +263,8 @@ public class Executor {
 	 */
 	public void runGameTimed(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController,
 			boolean visual) {
+		Game.warmUp();
+
 		Game game = new Game(0);
 
 		GameView gv = null;
@@ -177,12 +275,13 @@ public class Executor {
 		if (pacManController instanceof HumanController)
 			gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
 
-		new Thread(pacManController).start();
-		new Thread(ghostController).start();
+		startTimed(pacManController, ghostController);
 
 		while (!game.gameOver()) {
-			pacManController.update(game.copy(), System.currentTimeMillis() + DELAY);
-			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
+			//both controllers share one read-only snapshot: they may still read it while the game is advanced
+			Game snapshot = game.getReadOnlyCopy();
+			long pacManUpdate = pacManController.update(snapshot, System.currentTimeMillis() + DELAY);
+			long ghostUpdate = ghostController.update(snapshot, System.currentTimeMillis() + DELAY);
 
 			try {
 				Thread.sleep(DELAY);
@@ -190,14 +289,15 @@ public class Executor {
 				e.printStackTrace();
 			}
 
+			recordTick(pacManController, pacManUpdate);
+			recordTick(ghostController, ghostUpdate);
 			game.advanceGame(pacManController.getMove(), ghostController.getMove());
 
 			if (visual)
 				gv.repaint();
 		}
 
-		pacManController.terminate();
-		ghostController.terminate();
+		finishTimed(game, pacManController, ghostController);
 	}
 
 	/**
@@ -217,6 +317,8 @@ public class Executor {
 	 */
 	public void runGameTimedSpeedOptimised(Controller<MOVE> pacManController,
 			Controller<EnumMap<GHOST, MOVE>> ghostController, boolean fixedTime, boolean visual) {
+		Game.warmUp();
+
 		Game game = new Game(0);
 
 		GameView gv = null;
@@ -227,39 +329,30 @@ public class Executor {
 		if (pacManController instanceof HumanController)
 			gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
 
-		new Thread(pacManController).start();
-		new Thread(ghostController).start();
+		startTimed(pacManController, ghostController);
 
 		while (!game.gameOver()) {
-			pacManController.update(game.copy(), System.currentTimeMillis() + DELAY);
-			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
-
-			try {
-				int waited = DELAY / INTERVAL_WAIT;
+			//both controllers share one read-only snapshot: they may still read it while the game is advanced
+			Game snapshot = game.getReadOnlyCopy();
+			long deadline = System.nanoTime() + DELAY * 1000000L;
+			long pacManUpdate = pacManController.update(snapshot, System.currentTimeMillis() + DELAY);
+			long ghostUpdate = ghostController.update(snapshot, System.currentTimeMillis() + DELAY);
 
-				for (int j = 0; j < DELAY / INTERVAL_WAIT; j++) {
-					Thread.sleep(INTERVAL_WAIT);
+			//wait until both controllers answered this update, or until the time is up
+			awaitMoves(pacManController, ghostController, deadline);
 
-					if (pacManController.hasComputed() && ghostController.hasComputed()) {
-						waited = j;
-						break;
-					}
-				}
-
-				if (fixedTime)
-					Thread.sleep(((DELAY / INTERVAL_WAIT) - waited) * INTERVAL_WAIT);
+			if (fixedTime)
+				sleepUntil(deadline);
 
-				game.advanceGame(pacManController.getMove(), ghostController.getMove());
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+			recordTick(pacManController, pacManUpdate);
+			recordTick(ghostController, ghostUpdate);
+			game.advanceGame(pacManController.getMove(), ghostController.getMove());
 
 			if (visual)
 				gv.repaint();
 		}
 
-		pacManController.terminate();
-		ghostController.terminate();
+		finishTimed(game, pacManController, ghostController);
 	}
 
 	/**
@@ -276,7 +369,15 @@ public class Executor {
 	 */
 	public void runGameTimedRecorded(Controller<MOVE> pacManController,
 			Controller<EnumMap<GHOST, MOVE>> ghostController, boolean visual, String fileName) {
-		StringBuilder replay = new StringBuilder();
+		ReplayWriter replay = null;
+
+		try {
+			replay = new ReplayWriter(fileName);
+		} catch (IOException e) {
+			System.out.println("Could not save data!");
+		}
+
+		Game.warmUp();
 
 		Game game = new Game(0);
 
@@ -289,12 +390,13 @@ public class Executor {
 				gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
 		}
 
-		new Thread(pacManController).start();
-		new Thread(ghostController).start();
+		startTimed(pacManController, ghostController);
 
 		while (!game.gameOver()) {
-			pacManController.update(game.copy(), System.currentTimeMillis() + DELAY);
-			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
+			//both controllers share one read-only snapshot: they may still read it while the game is advanced
+			Game snapshot = game.getReadOnlyCopy();
+			long pacManUpdate = pacManController.update(snapshot, System.currentTimeMillis() + DELAY);
+			long ghostUpdate = ghostController.update(snapshot, System.currentTimeMillis() + DELAY);
 
 			try {
 				Thread.sleep(DELAY);
@@ -302,91 +404,307 @@ public class Executor {
 				e.printStackTrace();
 			}
 
+			recordTick(pacManController, pacManUpdate);
+			recordTick(ghostController, ghostUpdate);
 			game.advanceGame(pacManController.getMove(), ghostController.getMove());
 
 			if (visual)
 				gv.repaint();
 
-			replay.append(game.getGameState() + "\n");
+			if (replay != null)
+				replay = record(replay, game);
 		}
 
-		pacManController.terminate();
-		ghostController.terminate();
+		finishTimed(game, pacManController, ghostController);
 
-		saveToFile(replay.toString(), fileName, false);
+		if (replay != null)
+			close(replay);
 	}
 
 	/**
-	 * Replay a previously saved game.
+	 * Run a game in asynchronous mode and record only the moves of the
+	 * controllers with a MoveRecorder. replayGame() re-simulates the game from
+	 * them.
 	 *
-	 * @param fileName
-	 *            The file name of the game to be played
+	 * @param pacManController
+	 *            The Pac-Man controller
+	 * @param ghostController
+	 *            The Ghosts controller
 	 * @param visual
-	 *            Indicates whether or not to use visuals
+	 *            Whether to run the game with visuals
+	 * @param fileName
+	 *            The file name of the file that saves the moves
 	 */
-	public void replayGame(String fileName, boolean visual) {
-		ArrayList<String> timeSteps = loadReplay(fileName);
+	public void runGameTimedMoveRecorded(Controller<MOVE> pacManController,
+			Controller<EnumMap<GHOST, MOVE>> ghostController, boolean visual, String fileName) {
+		Game.warmUp();
 
 		Game game = new Game(0);
+		MoveRecorder recorder = null;
+
+		try {
+			recorder = new MoveRecorder(fileName, game);
+		} catch (IOException e) {
+			System.out.println("Could not save data!");
+		}
 
 		GameView gv = null;
 
-		if (visual)
+		if (visual) {
 			gv = new GameView(game).showGame();
 
-		for (int j = 0; j < timeSteps.size(); j++) {
-			game.setGameState(timeSteps.get(j));
+			if (pacManController instanceof HumanController)
+				gv.getFrame().addKeyListener(((HumanController) pacManController).getKeyboardInput());
+		}
+
+		startTimed(pacManController, ghostController);
+
+		while (!game.gameOver()) {
+			Game snapshot = game.getReadOnlyCopy();
+			long pacManUpdate = pacManController.update(snapshot, System.currentTimeMillis() + DELAY);
+			long ghostUpdate = ghostController.update(snapshot, System.currentTimeMillis() + DELAY);
 
 			try {
 				Thread.sleep(DELAY);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
+
+			recordTick(pacManController, pacManUpdate);
+			recordTick(ghostController, ghostUpdate);
+			MOVE pacManMove = pacManController.getMove();
+			EnumMap<GHOST, MOVE> ghostMoves = ghostController.getMove();
+
+			// the recorder advances the game; without it, the game goes on
+			// unrecorded
+			if (recorder == null)
+				game.advanceGame(pacManMove, ghostMoves);
+			else {
+				try {
+					recorder.advanceGame(pacManMove, ghostMoves);
+				} catch (IOException e) {
+					System.out.println("Could not save data!");
+					close(recorder);
+					recorder = null;
+				}
+			}
+
 			if (visual)
 				gv.repaint();
 		}
+
+		finishTimed(game, pacManController, ghostController);
+
+		if (recorder != null)
+			close(recorder);
 	}
 
-	// save file for replays
-	public static void saveToFile(String data, String name, boolean append) {
+	// appends the state of the game to the replay; if that fails, the replay
+	// is closed and null returned, so the game goes on without it
+	private static ReplayWriter record(ReplayWriter replay, Game game) {
 		try {
-			FileOutputStream outS = new FileOutputStream(name, append);
-			PrintWriter pw = new PrintWriter(outS);
+			replay.write(game);
 
-			pw.println(data);
-			pw.flush();
-			outS.close();
+			return replay;
+		} catch (IOException e) {
+			System.out.println("Could not save data!");
+			close(replay);
+
+			return null;
+		}
+	}
 
+	private static void close(Closeable replay) {
+		try {
+			replay.close();
 		} catch (IOException e) {
 			System.out.println("Could not save data!");
 		}
 	}
 
-	// load a replay
-	private static ArrayList<String> loadReplay(String fileName) {
-		ArrayList<String> replay = new ArrayList<String>();
+	// starts the controllers of a timed game with fresh move statistics
+	private void startTimed(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController) {
+		pacManController.getStats().reset();
+		ghostController.getStats().reset();
+		pacManController.start(controllerRuntime);
+		ghostController.start(controllerRuntime);
+	}
 
-		BufferedReader br = null;
-		try {
-			br = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
-			String input = br.readLine();
+	/*
+	 * Counts the tick as stale for a controller that has not answered the
+	 * update of the tick yet. This is checked before the move is taken: the
+	 * move is published before the answer, so a tick counted as fresh always
+	 * gets the fresh move, and a move that arrives in between is counted as
+	 * stale.
+	 */
+	private static void recordTick(Controller<?> controller, long update) {
+		controller.getStats().recordTick(controller.getAnsweredUpdate() != update);
+	}
+
+	// terminates the controllers of a timed game and reports their move
+	// statistics
+	private void finishTimed(Game game, Controller<MOVE> pacManController,
+			Controller<EnumMap<GHOST, MOVE>> ghostController) {
+		pacManController.terminate();
+		ghostController.terminate();
+
+		System.out.println("Ms Pac-Man (" + pacManController.getClass().getName() + "): "
+				+ pacManController.getStats());
+		System.out.println("Ghosts (" + ghostController.getClass().getName() + "): "
+				+ ghostController.getStats());
+
+		if (moveStatsFile == null)
+			return;
+
+		boolean header = !new File(moveStatsFile).exists();
+
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(moveStatsFile, true))) {
+			if (header)
+				pw.println("time,side,controller,score,ticks,stale_ticks,moves,deadline_misses,p50_ns,p99_ns,p999_ns,max_ns,mean_ns");
+
+			writeMoveStats(pw, game, "pacman", pacManController);
+			writeMoveStats(pw, game, "ghosts", ghostController);
+		} catch (IOException e) {
+			System.out.println("Could not save data!");
+		}
+	}
+
+	private static void writeMoveStats(PrintWriter pw, Game game, String side, Controller<?> controller) {
+		MoveStats stats = controller.getStats();
 
-			while (input != null) {
-				if (!input.equals(""))
-					replay.add(input);
+		pw.println(System.currentTimeMillis() + "," + side + "," + controller.getClass().getName() + ","
+				+ game.getScore() + "," + stats.getTicks() + "," + stats.getStaleTicks() + "," + stats.getMoves()
+				+ "," + stats.getDeadlineMisses() + "," + stats.getPercentile(50) + "," + stats.getPercentile(99)
+				+ "," + stats.getPercentile(99.9) + "," + stats.getMax() + "," + Math.round(stats.getMean()));
+	}
 
-				input = br.readLine();
+	/*
+	 * Parks the calling thread until both controllers computed a move for their
+	 * latest update (they unpark the thread that posted the update) or until the
+	 * deadline (System.nanoTime()) has passed.
+	 */
+	private static void awaitMoves(Controller<?> pacManController, Controller<?> ghostController, long deadline) {
+		long remaining;
+
+		while (!(pacManController.hasComputed() && ghostController.hasComputed())
+				&& (remaining = deadline - System.nanoTime()) > 0)
+			LockSupport.parkNanos(remaining);
+	}
+
+	private static void sleepUntil(long deadline) {
+		long remaining;
+
+		while ((remaining = deadline - System.nanoTime()) > 0)
+			LockSupport.parkNanos(remaining);
+	}
+
+	/**
+	 * Replay a previously saved game.
+	 *
+	 * @param fileName
+	 *            The file name of the game to be played
+	 * @param visual
+	 *            Indicates whether or not to use visuals
+	 */
+	public void replayGame(String fileName, boolean visual) {
+		replayGame(fileName, visual, 0);
+	}
+
+	/**
+	 * Replay a previously saved game from a given tick on. Replays written by
+	 * ReplayWriter are read as a stream and jump to the tick using their
+	 * keyframes, so this takes the same time and memory wherever the tick is.
+	 * Recordings of MoveRecorder are re-simulated, silently up to the tick.
+	 *
+	 * @param fileName
+	 *            The file name of the game to be played
+	 * @param visual
+	 *            Indicates whether or not to use visuals
+	 * @param fromTick
+	 *            The first tick to be shown, from 0
+	 */
+	public void replayGame(String fileName, boolean visual, int fromTick) {
+		Game.warmUp();
+
+		try {
+			if (MoveReplay.isMoveReplay(fileName)) {
+				replayMoves(fileName, visual, fromTick);
+				return;
 			}
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		} finally {
-			try {
-				br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		Game game = new Game(0);
+
+		GameView gv = null;
+
+		if (visual)
+			gv = new GameView(game).showGame();
+
+		// replays recorded before the binary format are lines of getGameState()
+		try (ReplayReader replay = ReplayReader.isReplay(fileName) ? new ReplayReader(fileName) : null) {
+			if (replay == null)
+				replayText(fileName, fromTick, game, gv);
+			else if (replay.seek(fromTick)) {
+				while (replay.next(game))
+					showTimeStep(gv);
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	// re-simulates a recording of MoveRecorder
+	private static void replayMoves(String fileName, boolean visual, int fromTick) throws IOException {
+		try (MoveReplay replay = new MoveReplay(fileName)) {
+			GameView gv = visual ? new GameView(replay.getGame()).showGame() : null;
+
+			while (replay.getTicks() < fromTick && replay.advance())
+				;
+
+			while (replay.advance())
+				showTimeStep(gv);
+		}
+	}
+
+	// plays a replay of getGameState() lines, one line at a time
+	private static void replayText(String fileName, int fromTick, Game game, GameView gv) throws IOException {
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)))) {
+			int tick = 0;
+
+			for (String input = br.readLine(); input != null; input = br.readLine())
+				if (!input.equals("") && tick++ >= fromTick) {
+					game.setGameState(input);
+					showTimeStep(gv);
+				}
+		}
+	}
+
+	private static void showTimeStep(GameView gv) {
+		try {
+			Thread.sleep(DELAY);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
 		}
 
-		return replay;
+		if (gv != null)
+			gv.repaint();
+	}
+
+	// save file for replays
+	public static void saveToFile(String data, String name, boolean append) {
+		try {
+			FileOutputStream outS = new FileOutputStream(name, append);
+			PrintWriter pw = new PrintWriter(outS);
+
+			pw.println(data);
+			pw.flush();
+			outS.close();
+
+		} catch (IOException e) {
+			System.out.println("Could not save data!");
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package pacman.benchmark;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+import pacman.controllers.examples.NearestPillPacMan;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.algorithms.Evaluation;
+import pacman.game.Game;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.internal.DistanceTable;
+import pacman.game.internal.Maze;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Compares the lookup throughput of the 32-bit and the 16-bit (packed) distance table layouts. Two workloads are
+ * measured for every maze: random lookups over all pairs of nodes and depth-limited DFS rollouts (as done by
+ * DepthFirstSearchRevamped) that evaluate every leaf with Evaluation.evaluateGameState(-). Each layout is swapped
+ * into the maze in turn, so the rest of the game engine is identical between the runs.
+ * 
+ * Usage: DistanceTableBenchmark [rollout depth] [seconds per measurement]
+ */
+public class DistanceTableBenchmark
+{
+	private static final int NUM_PAIRS=1<<20;
+	private static final int NUM_START_STATES=32;
+	private static final MOVE[] MOVES={MOVE.LEFT,MOVE.RIGHT,MOVE.UP,MOVE.DOWN};
+	
+	private static long sink;
+	
+	public static void main(String[] args)
+	{
+		int depth=args.length>0 ? Integer.parseInt(args[0]) : 5;
+		double seconds=args.length>1 ? Double.parseDouble(args[1]) : 2;
+		
+		System.out.println("maze\tlayout\tMB\tlookups/s\tleaves/s");
+		
+		for(int i=0;i<NUM_MAZES;i++)
+		{
+			Game[] startStates=createStartStates(i);
+			Maze maze=startStates[0].getCurrentMaze();
+			DistanceTable original=maze.shortestPathDistances;
+			DistanceTable[] layouts={original.toIntTable(),original.toPackedTable()};
+			String[] names={"int","packed"};
+			
+			int[] pairs=createPairs(maze.graph.length);
+			
+			for(int j=0;j<layouts.length;j++)
+			{
+				maze.shortestPathDistances=layouts[j];
+				
+				//warm-up
+				lookups(startStates[0],pairs,seconds/2);
+				rollouts(startStates,depth,seconds/2);
+				
+				double lookups=lookups(startStates[0],pairs,seconds);
+				double leaves=rollouts(startStates,depth,seconds);
+				
+				System.out.println(maze.name+"\t"+names[j]+"\t"+String.format("%.1f",layouts[j].size()*(double)layouts[j].bytesPerEntry()/(1<<20))
+						+"\t"+String.format("%.3e",lookups)+"\t"+String.format("%.3e",leaves));
+			}
+			
+			maze.shortestPathDistances=original;
+		}
+		
+		if(sink==42)
+			System.out.println();
+	}
+	
+	//plays part of a game to collect states that are representative of those seen during search
+	private static Game[] createStartStates(int mazeIndex)
+	{
+		Game game=new Game(mazeIndex,mazeIndex);
+		NearestPillPacMan pacMan=new NearestPillPacMan();
+		StarterGhosts ghosts=new StarterGhosts();
+		
+		Game[] states=new Game[NUM_START_STATES];
+		
+		for(int i=0;i<states.length;i++)
+		{
+			for(int j=0;j<20 && game.getMazeIndex()==mazeIndex && !game.gameOver();j++)
+				game.advanceGame(pacMan.getMove(game.copy(),-1),ghosts.getMove(game.copy(),-1));
+			
+			states[i]=game.copy();
+		}
+		
+		return states;
+	}
+	
+	private static int[] createPairs(int numNodes)
+	{
+		Random rnd=new Random(0);
+		int[] pairs=new int[2*NUM_PAIRS];
+		
+		for(int i=0;i<pairs.length;i++)
+			pairs[i]=rnd.nextInt(numNodes);
+		
+		return pairs;
+	}
+	
+	private static double lookups(Game game,int[] pairs,double seconds)
+	{
+		long count=0;
+		long sum=0;
+		long start=System.nanoTime();
+		long end=start+(long)(seconds*1e9);
+		long now;
+		
+		do
+		{
+			for(int i=0;i<pairs.length;i+=2)
+				sum+=game.getShortestPathDistance(pairs[i],pairs[i+1]);
+			
+			count+=NUM_PAIRS;
+			now=System.nanoTime();
+		}
+		while(now<end);
+		
+		sink+=sum;
+		
+		return count/((now-start)/1e9);
+	}
+	
+	private static double rollouts(Game[] startStates,int depth,double seconds)
+	{
+		long leaves=0;
+		long start=System.nanoTime();
+		long end=start+(long)(seconds*1e9);
+		long now;
+		int index=0;
+		
+		do
+		{
+			Game game=startStates[index++%startStates.length];
+			leaves+=rollout(game,ghostMoves(game),depth);
+			now=System.nanoTime();
+		}
+		while(now<end);
+		
+		return leaves/((now-start)/1e9);
+	}
+	
+	private static int rollout(Game game,EnumMap<GHOST,MOVE> ghostMoves,int depth)
+	{
+		if(depth==0)
+		{
+			sink+=Evaluation.evaluateGameState(game);
+			return 1;
+		}
+		
+		int leaves=0;
+		
+		for(MOVE move : MOVES)
+		{
+			Game copy=game.copy();
+			copy.advanceGame(move,ghostMoves);
+			leaves+=rollout(copy,ghostMoves,depth-1);
+		}
+		
+		return leaves;
+	}
+	
+	private static EnumMap<GHOST,MOVE> ghostMoves(Game game)
+	{
+		EnumMap<GHOST,MOVE> ghostMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
+		
+		for(GHOST ghost : GHOST.values())
+			ghostMoves.put(ghost,game.getGhostLastMoveMade(ghost));
+		
+		return ghostMoves;
+	}
+}
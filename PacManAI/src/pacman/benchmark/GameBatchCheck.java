@@ -0,0 +1,224 @@
+package pacman.benchmark;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+import pacman.game.Game;
+import pacman.game.GameBatch;
+import pacman.game.Constants.DM;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Differential check of GameBatch against Game: a batch of games and one Game per slot are started from the same
+ * seeds and advanced with the same move streams, and the states (Game.getGameState() against
+ * GameBatch.getGameState(-)) are compared after every tick until all games are over. Half of the games use random
+ * moves (including NEUTRAL and impossible moves); in the other half Ms Pac-Man heads for the nearest pill and the
+ * ghosts flee, so that levels are completed, power pills eaten and ghosts eaten. Some slots are restarted mid-game
+ * from a Game using GameBatch.set(-) and some are cloned using GameBatch.copy(-). Afterwards, the throughput of
+ * both engines is measured with random moves.
+ *
+ * Exits with status 1 at the first difference.
+ *
+ * Usage: GameBatchCheck [number of games] [seed]
+ */
+public class GameBatchCheck
+{
+	private static final MOVE[] MOVES=MOVE.values();
+	private static final GHOST[] GHOSTS=GHOST.values();
+
+	public static void main(String[] args)
+	{
+		int size=args.length>0 ? Integer.parseInt(args[0]) : 64;
+		long seed=args.length>1 ? Long.parseLong(args[1]) : 0;
+
+		long ticks=check(size,seed);
+
+		System.out.println("identical states for "+size+" games, "+ticks+" ticks");
+
+		measure(size);
+	}
+
+	private static long check(int size,long seed)
+	{
+		Random random=new Random(seed);
+		GameBatch batch=new GameBatch(size);
+		Game[] games=new Game[size];
+
+		for(int i=0;i<size;i++)
+		{
+			games[i]=new Game(seed+i,i%NUM_MAZES);
+			batch.reset(i,seed+i,i%NUM_MAZES);
+		}
+
+		int[] pacManMoves=new int[size];
+		int[] ghostMoves=new int[size*NUM_GHOSTS];
+		@SuppressWarnings({"unchecked","rawtypes"})
+		EnumMap<GHOST,MOVE>[] maps=new EnumMap[size];
+		long ticks=0;
+
+		for(int tick=0;;tick++)
+		{
+			boolean running=false;
+
+			for(int i=0;i<size;i++)
+			{
+				maps[i]=new EnumMap<GHOST,MOVE>(GHOST.class);
+
+				if(games[i].gameOver())
+					continue;
+
+				running=true;
+
+				if(i%2==0)
+					randomMoves(random,maps[i],pacManMoves,ghostMoves,i);
+				else
+					guidedMoves(games[i],maps[i],pacManMoves,ghostMoves,i);
+			}
+
+			if(!running)
+				return ticks;
+
+			batch.advance(pacManMoves,ghostMoves);
+
+			for(int i=0;i<size;i++)
+				if(!games[i].gameOver())
+				{
+					games[i].advanceGame(MOVES[pacManMoves[i]],maps[i]);
+					ticks++;
+				}
+
+			for(int i=0;i<size;i++)
+				compare(games[i],batch,i,tick);
+
+			//restart a game of the batch from its Game, and replace another game by a copy of it
+			if(tick%500==250)
+			{
+				int from=random.nextInt(size), to=random.nextInt(size);
+
+				batch.set(from,games[from]);
+				batch.copy(from,to);
+				games[to]=games[from].copy();
+
+				compare(games[to],batch,to,tick);
+			}
+		}
+	}
+
+	private static void randomMoves(Random random,EnumMap<GHOST,MOVE> map,int[] pacManMoves,int[] ghostMoves,int i)
+	{
+		pacManMoves[i]=random.nextInt(MOVES.length);
+
+		for(GHOST ghost : GHOSTS)
+		{
+			MOVE move=MOVES[random.nextInt(MOVES.length)];
+			map.put(ghost,move);
+			ghostMoves[i*NUM_GHOSTS+ghost.ordinal()]=move.ordinal();
+		}
+	}
+
+	private static void guidedMoves(Game game,EnumMap<GHOST,MOVE> map,int[] pacManMoves,int[] ghostMoves,int i)
+	{
+		int pacman=game.getPacmanCurrentNodeIndex();
+		int[] targets=game.getActivePillsIndices();
+
+		if(targets.length==0)
+			targets=game.getActivePowerPillsIndices();
+
+		MOVE pacManMove=targets.length==0 ? MOVE.NEUTRAL
+				: game.getNextMoveTowardsTarget(pacman,game.getClosestNodeIndexFromNodeIndex(pacman,targets,DM.PATH),DM.PATH);
+
+		pacManMoves[i]=pacManMove.ordinal();
+
+		for(GHOST ghost : GHOSTS)
+		{
+			MOVE move=game.getGhostLairTime(ghost)>0 ? MOVE.NEUTRAL : game.getApproximateNextMoveAwayFromTarget(
+					game.getGhostCurrentNodeIndex(ghost),pacman,game.getGhostLastMoveMade(ghost),DM.PATH);
+
+			map.put(ghost,move);
+			ghostMoves[i*NUM_GHOSTS+ghost.ordinal()]=move.ordinal();
+		}
+	}
+
+	private static void compare(Game game,GameBatch batch,int i,int tick)
+	{
+		String expected=game.getGameState();
+		String actual=batch.getGameState(i);
+
+		if(!expected.equals(actual))
+		{
+			System.out.println("game "+i+" differs after tick "+tick);
+			System.out.println("Game:      "+expected);
+			System.out.println("GameBatch: "+actual);
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Measures ticks per second of both engines for random moves. Games that end are restarted.
+	 */
+	private static void measure(int size)
+	{
+		int[] pacManMoves=new int[size];
+		int[] ghostMoves=new int[size*NUM_GHOSTS];
+		Random random=new Random(1);
+
+		for(int run=0;run<2;run++)
+		{
+			GameBatch batch=new GameBatch(size);
+			Game[] games=new Game[size];
+			EnumMap<GHOST,MOVE> map=new EnumMap<GHOST,MOVE>(GHOST.class);
+
+			for(int i=0;i<size;i++)
+			{
+				batch.reset(i,i);
+				games[i]=new Game(i);
+			}
+
+			long gameTicks=0, batchTicks=0;
+			long start=System.nanoTime();
+
+			while(System.nanoTime()-start<2e9)
+			{
+				for(int i=0;i<size;i++)
+				{
+					if(games[i].gameOver())
+						games[i]=new Game(i);
+
+					for(GHOST ghost : GHOSTS)
+						map.put(ghost,MOVES[random.nextInt(MOVES.length)]);
+
+					games[i].advanceGame(MOVES[random.nextInt(MOVES.length)],map);
+					gameTicks++;
+				}
+			}
+
+			double gameRate=gameTicks/((System.nanoTime()-start)/1e9);
+			start=System.nanoTime();
+
+			while(System.nanoTime()-start<2e9)
+			{
+				for(int i=0;i<size;i++)
+				{
+					if(batch.gameOver(i))
+						batch.reset(i,i);
+
+					pacManMoves[i]=random.nextInt(MOVES.length);
+				}
+
+				for(int g=0;g<ghostMoves.length;g++)
+					ghostMoves[g]=random.nextInt(MOVES.length);
+
+				batch.advance(pacManMoves,ghostMoves);
+				batchTicks+=size;
+			}
+
+			double batchRate=batchTicks/((System.nanoTime()-start)/1e9);
+
+			if(run>0)
+				System.out.println(String.format("Game: %.0f ticks/s, GameBatch: %.0f ticks/s (%d games)",gameRate,batchRate,size));
+		}
+	}
+}
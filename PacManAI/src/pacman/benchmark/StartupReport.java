@@ -0,0 +1,28 @@
+package pacman.benchmark;
+
+import pacman.game.Game;
+import pacman.game.internal.MazeRegistry;
+import pacman.game.internal.StartupTimer;
+
+/*
+ * Prints the start-up cost broken down by phase and maze: first the cost of creating a game on maze A only, then
+ * after all other mazes have been loaded in the background.
+ */
+public class StartupReport
+{
+	public static void main(String[] args)
+	{
+		long start=System.nanoTime();
+		Game game=new Game(0);
+		game.getShortestPath(game.getPacmanCurrentNodeIndex(),game.getGhostInitialNodeIndex());
+		
+		System.out.println(String.format("First game ready after %.1f ms%n",(System.nanoTime()-start)/1e6));
+		System.out.println(StartupTimer.getReport());
+		
+		start=System.nanoTime();
+		MazeRegistry.loadAll();
+		
+		System.out.println(String.format("All mazes loaded after a further %.1f ms%n",(System.nanoTime()-start)/1e6));
+		System.out.println(StartupTimer.getReport());
+	}
+}
@@ -1,22 +1,37 @@
 package pacman.controllers;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
 import pacman.game.Game;
 
 /**
  * This class is the superclass of your controller. In contains the code required to run the 
- * controller as a thread. In provides numerous methods that allow the Executor to use the 
- * controller in various different execution modes. Your controller only needs to provide the
- * code for the getMove() method.
+ * controller asynchronously: in the timed execution modes, each update of the game is posted to the
+ * mailbox of the controller and computed on the ControllerRuntime of the controller. In provides numerous
+ * methods that allow the Executor to use the controller in various different execution modes. Your
+ * controller only needs to provide the code for the getMove() method.
+ *
+ * The mailbox holds the latest update only, numbered by a sequence number: updates that arrive while a
+ * move is computed replace each other, and the latest one is computed as soon as the controller is free,
+ * so there is at most one computation in progress. The move is published (through volatile fields) before
+ * the sequence number of the update it answers, and the thread that posted the update is then unparked, so
+ * the Executor can wait for the moves without polling.
  *
  * @param <T> The generic type of the move to be returned (either a single move for Ms Pac-Man or an EnumMap for the ghosts).
  */
 public abstract class Controller<T> implements Runnable
 {
-	private boolean alive,wasSignalled,hasComputed;
-	private volatile boolean threadStillRunning;
-	private long timeDue;
-	private Game game;
-	protected T lastMove;	//this is now protected. You can set this directly in your getMove() method to save an immediate response.
+	private volatile boolean alive;
+	private final AtomicLong sequence;				//the sequence number of the latest update
+	private final AtomicReference<Request> mailbox;	//the latest update that has not been taken yet
+	private final AtomicBoolean computing;
+	private volatile long answered;					//the sequence number of the update lastMove answers
+	private volatile ControllerRuntime runtime;
+	private final MoveStats stats;
+	protected volatile T lastMove;	//this is now protected. You can set this directly in your getMove() method to save an immediate response.
 
 	/**
 	 * Instantiates a new controller. The constructor initialises the class variables.
@@ -24,45 +39,106 @@ public abstract class Controller<T> implements Runnable
 	public Controller()
 	{
 		alive=true;
-		wasSignalled=false;
-		hasComputed=false;
-		threadStillRunning=false;
+		sequence=new AtomicLong();
+		mailbox=new AtomicReference<Request>();
+		computing=new AtomicBoolean();
+		stats=new MoveStats();
+	}
+
+	/**
+	 * Starts the controller: from now on, the moves are computed on the runtime supplied. A controller
+	 * that is never started uses the default runtime.
+	 *
+	 * @param runtime The runtime to compute the moves on
+	 */
+	public final void start(ControllerRuntime runtime)
+	{
+		this.runtime=runtime;
+		alive=true;
 	}
 
 	/**
-	 * Terminates the controller: a signal is sent and the flag 'alive' is set to false. When
-	 * the thread wakes up, the outer loop will terminate and the thread finishes.
+	 * Terminates the controller: the flag 'alive' is set to false, so updates no longer start any
+	 * computations. A computation in progress is completed, but its move is not used anymore.
 	 */
 	public final void terminate()
 	{
 		alive=false;
-		wasSignalled=true;
-
-		synchronized(this)
-		{
-			notify();
-		}
+		mailbox.set(null);
 	}
 
 	/**
-	 * Updates the game state: a copy of the game is passed to this method and the class variable is
-	 * updated accordingly.
+	 * Updates the game state: the game is posted to the mailbox of the controller, replacing any update
+	 * that has not been taken yet, and the controller starts to compute a move for it unless it is still
+	 * computing the move for a previous update. The thread calling this method is unparked once the move
+	 * for this update is available (see hasComputed()).
 	 *
 	 * @param game A copy of the current game
 	 * @param timeDue The time the next move is due
+	 * @return The sequence number of the update
 	 */
-	public final void update(Game game,long timeDue)
+	public final long update(Game game,long timeDue)
 	{
-		synchronized(this)
+		long number=sequence.incrementAndGet();
+
+		if(alive)
 		{
-			this.game=game;
-			this.timeDue=timeDue;
-			wasSignalled=true;
-			hasComputed=false;
-			notify();
+			mailbox.set(new Request(number,game,timeDue,Thread.currentThread()));
+			schedule();
+		}
+
+		return number;
+	}
+
+	//starts a computation for the update in the mailbox, unless there is none or one is in progress already
+	private void schedule()
+	{
+		if(mailbox.get()==null || !computing.compareAndSet(false,true))
+			return;
+
+		ControllerRuntime runtime=this.runtime;
+
+		try
+		{
+			(runtime!=null ? runtime : ControllerRuntime.getDefault()).execute(new Runnable()
+			{
+				public void run()
+				{
+					compute();
+				}
+			});
+		}
+		catch(RuntimeException e)
+		{
+			computing.set(false);
+			throw e;
 		}
 	}
 
+	private void compute()
+	{
+		try
+		{
+			Request request=mailbox.getAndSet(null);
+
+			if(request!=null && alive)
+			{
+				long start=System.nanoTime();
+				lastMove=getMove(request.game,request.timeDue);
+				stats.recordMove(System.nanoTime()-start,System.currentTimeMillis()>request.timeDue);
+				answered=request.number;
+				LockSupport.unpark(request.requester);
+			}
+		}
+		finally
+		{
+			computing.set(false);
+		}
+
+		//an update may have been posted while the move was computed
+		schedule();
+	}
+
 	/**
 	 * Retrieves the move from the controller (whatever is stored in the class variable).
 	 *
@@ -73,55 +149,48 @@ public abstract class Controller<T> implements Runnable
 		return lastMove;
 	}
 	
-	/* (non-Javadoc)
+	/**
+	 * Starts the controller on the default runtime. No thread is needed anymore to run a controller, so
+	 * this method returns immediately: it is kept for code that starts a controller as a thread.
+	 *
 	 * @see java.lang.Runnable#run()
 	 */
 	public final void run()
 	{
-		while(alive)
-		{
-			synchronized(this)
-			{
-				while(!wasSignalled)
-				{
-					try
-					{
-						wait();
-					}
-					catch(InterruptedException e)
-					{
-						e.printStackTrace();
-					}
-				}
-				
-				if(!threadStillRunning)
-				{
-					new Thread()
-					{
-						public void run()
-						{
-							threadStillRunning=true;
-							lastMove = getMove(game,timeDue);
-							hasComputed=true;
-							threadStillRunning=false;
-						}
-					}.start();
-				}
-				
-				wasSignalled=false;
-			}
-		}
+		start(ControllerRuntime.getDefault());
 	}
 	
 	/**
-	 * This method is used to check whether the controller computed a move since the last
-	 * update of the game.
+	 * This method is used to check whether the controller computed a move for the latest update
+	 * of the game.
 	 * 
-	 * @return Whether or not the controller computed a move since the last update
+	 * @return Whether or not the controller computed a move for the latest update
 	 */
 	public final boolean hasComputed()
 	{
-		return hasComputed;
+		return answered==sequence.get();
+	}
+
+	/**
+	 * Returns the sequence number of the update that the move returned by getMove() was computed for
+	 * (0 if none has been computed yet).
+	 *
+	 * @return The sequence number of the update answered last
+	 */
+	public final long getAnsweredUpdate()
+	{
+		return answered;
+	}
+
+	/**
+	 * Returns the timing of the moves computed in the timed execution modes: the time getMove() took and
+	 * the missed deadlines are recorded here by the controller, the stale ticks by the Executor.
+	 *
+	 * @return The statistics of the moves
+	 */
+	public final MoveStats getStats()
+	{
+		return stats;
 	}
 
 	/**
@@ -136,4 +205,23 @@ public abstract class Controller<T> implements Runnable
 	 * @return The move to be played (i.e., the move calculated by your controller)
 	 */
 	public abstract T getMove(Game game,long timeDue);
+
+	/**
+	 * An update posted to the mailbox.
+	 */
+	private static final class Request
+	{
+		final long number;
+		final Game game;
+		final long timeDue;
+		final Thread requester;
+
+		Request(long number,Game game,long timeDue,Thread requester)
+		{
+			this.number=number;
+			this.game=game;
+			this.timeDue=timeDue;
+			this.requester=requester;
+		}
+	}
 }
\ No newline at end of file
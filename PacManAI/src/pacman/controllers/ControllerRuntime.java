@@ -0,0 +1,125 @@
+package pacman.controllers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads on which controllers compute their moves in the timed execution modes. Each call to
+ * Controller.update() submits (at most) one computation to the runtime of the controller, so no thread
+ * is created per move and any number of matches may share one runtime.
+ *
+ * A pooled runtime has a fixed number of threads: if more controllers are computing at once than there
+ * are threads, the remaining computations wait for a thread and may miss their deadline. A virtual runtime
+ * runs every computation on a virtual thread (Java 21 and later); on older Java versions it falls back to
+ * a pool that grows on demand and reuses idle threads.
+ *
+ * The threads of a runtime are daemon threads, so a runtime that is not shut down does not keep the JVM
+ * alive.
+ */
+public final class ControllerRuntime
+{
+	private static final AtomicInteger runtimes=new AtomicInteger();
+	private static ControllerRuntime defaultRuntime;
+
+	private final ExecutorService executor;
+
+	private ControllerRuntime(ExecutorService executor)
+	{
+		this.executor=executor;
+	}
+
+	/**
+	 * Creates a runtime with a fixed number of threads.
+	 *
+	 * @param threads The number of threads
+	 * @return The runtime
+	 */
+	public static ControllerRuntime pooled(int threads)
+	{
+		if(threads<1)
+			throw new IllegalArgumentException("threads must be at least 1: "+threads);
+
+		return new ControllerRuntime(Executors.newFixedThreadPool(threads,daemonThreads()));
+	}
+
+	/**
+	 * Creates a runtime that runs each computation on a virtual thread, or on a pool of reused threads
+	 * that grows on demand if the JVM has no virtual threads.
+	 *
+	 * @return The runtime
+	 */
+	public static ControllerRuntime virtual()
+	{
+		try
+		{
+			//looked up reflectively so that the code still compiles for and runs on Java 8
+			Method factory=Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+			return new ControllerRuntime((ExecutorService)factory.invoke(null));
+		}
+		catch(ReflectiveOperationException e)
+		{
+			return new ControllerRuntime(Executors.newCachedThreadPool(daemonThreads()));
+		}
+	}
+
+	/**
+	 * Returns the runtime used by controllers that were not started on a runtime of their own: a virtual
+	 * runtime shared by the whole JVM.
+	 *
+	 * @return The default runtime
+	 */
+	public static synchronized ControllerRuntime getDefault()
+	{
+		if(defaultRuntime==null)
+			defaultRuntime=virtual();
+
+		return defaultRuntime;
+	}
+
+	/**
+	 * Runs a computation on one of the threads of this runtime.
+	 *
+	 * @param task The computation
+	 */
+	void execute(Runnable task)
+	{
+		executor.execute(task);
+	}
+
+	/**
+	 * Shuts this runtime down: computations in progress are completed, but no new ones are accepted.
+	 * The default runtime cannot be shut down.
+	 */
+	public void shutdown()
+	{
+		//compared with the field rather than getDefault(), which would create the default runtime as a side effect
+		synchronized(ControllerRuntime.class)
+		{
+			if(this==defaultRuntime)
+				throw new IllegalStateException("The default runtime cannot be shut down");
+		}
+
+		executor.shutdown();
+	}
+
+	private static ThreadFactory daemonThreads()
+	{
+		final String prefix="controller-"+runtimes.incrementAndGet()+"-";
+		final AtomicInteger count=new AtomicInteger();
+
+		return new ThreadFactory()
+		{
+			public Thread newThread(Runnable task)
+			{
+				Thread thread=new Thread(task,prefix+count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		};
+	}
+}
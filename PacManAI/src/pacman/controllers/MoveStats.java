@@ -0,0 +1,146 @@
+package pacman.controllers;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The timing of the moves of a controller in the timed execution modes: a histogram of the time getMove()
+ * took, the number of moves that were completed after the time they were due, and the number of ticks the
+ * game was advanced with a stale move, i.e., one computed for an earlier tick because the move for the
+ * current tick was not ready yet. The latencies are recorded by the controller, the ticks by the Executor.
+ *
+ * The histogram has a fixed number of buckets: values below 2^SUB_BUCKET_BITS ns have a bucket each, and
+ * every power of 2 above is split into 2^SUB_BUCKET_BITS buckets, so the percentiles are accurate to about 6%
+ * (the maximum is exact) and recording a latency takes constant time and no memory.
+ */
+public final class MoveStats
+{
+	private static final int SUB_BUCKET_BITS=4;
+	private static final int SUB_BUCKETS=1<<SUB_BUCKET_BITS;
+
+	private final long[] buckets=new long[(64-SUB_BUCKET_BITS+1)*SUB_BUCKETS];
+	private long moves, sum, max, deadlineMisses, ticks, staleTicks;
+
+	/**
+	 * Records the time a move took.
+	 *
+	 * @param nanos The time getMove() took in ns
+	 * @param missedDeadline Whether the move was completed after it was due
+	 */
+	public synchronized void recordMove(long nanos,boolean missedDeadline)
+	{
+		nanos=Math.max(nanos,0);
+
+		buckets[_bucket(nanos)]++;
+		moves++;
+		sum+=nanos;
+		max=Math.max(max,nanos);
+
+		if(missedDeadline)
+			deadlineMisses++;
+	}
+
+	/**
+	 * Records a tick of the game.
+	 *
+	 * @param stale Whether the game was advanced with a move that was not computed for this tick
+	 */
+	public synchronized void recordTick(boolean stale)
+	{
+		ticks++;
+
+		if(stale)
+			staleTicks++;
+	}
+
+	/**
+	 * Clears all counts, e.g., before a new game.
+	 */
+	public synchronized void reset()
+	{
+		Arrays.fill(buckets,0);
+		moves=sum=max=deadlineMisses=ticks=staleTicks=0;
+	}
+
+	/**
+	 * Returns a percentile of the time getMove() took: the upper bound of the bucket it falls into, or the
+	 * maximum if that is lower.
+	 *
+	 * @param percentile The percentile, from 0 to 100 (e.g., 99.9)
+	 * @return The percentile in ns, 0 if no move has been recorded
+	 */
+	public synchronized long getPercentile(double percentile)
+	{
+		if(moves==0)
+			return 0;
+
+		long rank=Math.max(1,(long)Math.ceil(percentile/100*moves)), count=0;
+
+		for(int i=0;i<buckets.length;i++)
+			if((count+=buckets[i])>=rank)
+				return Math.min(_upperBound(i),max);
+
+		return max;
+	}
+
+	public synchronized long getMax()
+	{
+		return max;
+	}
+
+	public synchronized double getMean()
+	{
+		return moves==0 ? 0 : (double)sum/moves;
+	}
+
+	public synchronized long getMoves()
+	{
+		return moves;
+	}
+
+	public synchronized long getDeadlineMisses()
+	{
+		return deadlineMisses;
+	}
+
+	public synchronized long getTicks()
+	{
+		return ticks;
+	}
+
+	public synchronized long getStaleTicks()
+	{
+		return staleTicks;
+	}
+
+	/**
+	 * Summarises the statistics on one line, with the times in ms.
+	 */
+	public synchronized String toString()
+	{
+		return String.format(Locale.ROOT,"%d ticks, %d stale (%.1f%%), %d moves, %d missed deadlines, getMove p50 %.3f ms, "
+				+"p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",ticks,staleTicks,ticks==0 ? 0 : 100.0*staleTicks/ticks,moves,
+				deadlineMisses,getPercentile(50)/1e6,getPercentile(99)/1e6,getPercentile(99.9)/1e6,max/1e6);
+	}
+
+	private static int _bucket(long nanos)
+	{
+		if(nanos<SUB_BUCKETS)
+			return (int)nanos;
+
+		int exponent=63-Long.numberOfLeadingZeros(nanos);	//at least SUB_BUCKET_BITS
+
+		return (exponent-SUB_BUCKET_BITS+1)*SUB_BUCKETS+(int)((nanos>>>(exponent-SUB_BUCKET_BITS))&(SUB_BUCKETS-1));
+	}
+
+	//the largest value of a bucket
+	private static long _upperBound(int bucket)
+	{
+		if(bucket<SUB_BUCKETS)
+			return bucket;
+
+		int shift=bucket/SUB_BUCKETS-1;
+
+		return ((long)(SUB_BUCKETS+bucket%SUB_BUCKETS+1)<<shift)-1;
+	}
+}
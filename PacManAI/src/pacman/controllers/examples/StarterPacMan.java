@@ -63,7 +63,7 @@ public class StarterPacMan extends Controller<MOVE> {
 		perceptron = new Perceptron();
 		id3Algorithm = new ID3Algorithm();
 		qLearning = new QLearning();
-		aStar = new AStar(Evaluation.DEPTH);
+		aStar = new AStar(Evaluation.FULL_TREE_DEPTH);
 		depthFirstSearchRevamped = new DepthFirstSearchRevamped();
 	}
 	
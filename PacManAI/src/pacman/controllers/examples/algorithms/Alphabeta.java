@@ -5,73 +5,111 @@ import java.util.EnumMap;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GamePool;
 
 public class Alphabeta {
+	private final TranspositionTable transpositionTable = new TranspositionTable();
+	private final GhostMoveStack ghostMoveStack = new GhostMoveStack();
+	
 	int getBestHeuristicAlphabeta(Game gameState, EnumMap<GHOST, MOVE> ghostMoves, boolean maximizingPlayer, int alpha, int beta, int depth) {
-		if (depth == 0) return Evaluation.evaluateGameState(gameState);
+		long key = TranspositionTable.key(gameState, ghostMoves, maximizingPlayer ? 1 : 0);
+		long entry = transpositionTable.probe(key, depth);
+		if (entry != TranspositionTable.MISS) {
+			int value = TranspositionTable.value(entry);
+			switch (TranspositionTable.bound(entry)) {
+			case TranspositionTable.EXACT:
+				return value;
+			case TranspositionTable.LOWER_BOUND:
+				if (value >= beta) return value;
+				break;
+			case TranspositionTable.UPPER_BOUND:
+				if (value <= alpha) return value;
+				break;
+			}
+		}
+		
+		if (depth == 0) {
+			int value = Evaluation.evaluateGameState(gameState);
+			transpositionTable.store(key, depth, value, TranspositionTable.EXACT);
+			return value;
+		}
 		
+		int originalAlpha = alpha, originalBeta = beta;
 		for (int i = 0; i < 4; i++) {			
-			Game copy = gameState.copy();
+			Game copy = GamePool.copyOf(gameState);
+			EnumMap<GHOST, MOVE> moves = ghostMoveStack.copy(ghostMoves, depth);
 			switch(i) {
 			case 0:
-				copy.advanceGame(MOVE.LEFT, ghostMoves);
+				copy.advanceGame(MOVE.LEFT, moves);
 				break;
 			case 1:
-				copy.advanceGame(MOVE.RIGHT, ghostMoves);
+				copy.advanceGame(MOVE.RIGHT, moves);
 				break;
 			case 2:
-				copy.advanceGame(MOVE.UP, ghostMoves);
+				copy.advanceGame(MOVE.UP, moves);
 				break;
 			case 3:
-				copy.advanceGame(MOVE.DOWN, ghostMoves);
+				copy.advanceGame(MOVE.DOWN, moves);
 				break;
 			}
-			int heuristic = getBestHeuristicAlphabeta(copy, ghostMoves, !maximizingPlayer, alpha, beta, depth - 1);
+			int heuristic = getBestHeuristicAlphabeta(copy, moves, !maximizingPlayer, alpha, beta, depth - 1);
+			GamePool.release(copy);
 			if (maximizingPlayer) {
 				if (heuristic > alpha) alpha = heuristic;
 				if (beta <= alpha) {
 					// simply return, minimizing player will not choose this since alpha is greater than beta already
+					transpositionTable.store(key, depth, alpha, TranspositionTable.LOWER_BOUND);
 					return alpha;
 				}
 			} else { /// minimizingPlayer
 				if (heuristic < beta) beta = heuristic;
 				if (beta <= alpha) {
 					// simply return, maximizing player will not choose this since beta is less than alpha
+					transpositionTable.store(key, depth, beta, TranspositionTable.UPPER_BOUND);
 					return beta;
 				}
 			}
 		}
 		
-		return (maximizingPlayer ? alpha : beta);
+		// a value that did not improve on the window is only a bound
+		int value = maximizingPlayer ? alpha : beta;
+		int bound = TranspositionTable.EXACT;
+		if (maximizingPlayer && value <= originalAlpha) bound = TranspositionTable.UPPER_BOUND;
+		if (!maximizingPlayer && value >= originalBeta) bound = TranspositionTable.LOWER_BOUND;
+		transpositionTable.store(key, depth, value, bound);
+		return value;
 	}
 	
 	public MOVE getMove(Game game, EnumMap<GHOST, MOVE> ghostMoves, int depth) {
 		// this is the driver function and the first maximizing step, since the
 		// player is choosing the highest value here to get the best move
 		long start = System.currentTimeMillis();
+		transpositionTable.newSearch();
 		int leftValue = 0, rightValue = 0, upValue = 0, downValue = 0;
 		
 		for (int i = 0; i < 4; i++) {			
-			Game copy = game.copy();
+			Game copy = GamePool.copyOf(game);
+			EnumMap<GHOST, MOVE> moves = ghostMoveStack.copy(ghostMoves, depth);
 			switch(i) {
 			// pass false because this is the first maximizing step, so the next step is the minimizing player
 			case 0:
-				copy.advanceGame(MOVE.LEFT, ghostMoves);
-				leftValue = getBestHeuristicAlphabeta(copy, ghostMoves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
+				copy.advanceGame(MOVE.LEFT, moves);
+				leftValue = getBestHeuristicAlphabeta(copy, moves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
 				break;
 			case 1:
-				copy.advanceGame(MOVE.RIGHT, ghostMoves);
-				rightValue = getBestHeuristicAlphabeta(copy, ghostMoves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
+				copy.advanceGame(MOVE.RIGHT, moves);
+				rightValue = getBestHeuristicAlphabeta(copy, moves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
 				break;
 			case 2:
-				copy.advanceGame(MOVE.UP, ghostMoves);
-				upValue = getBestHeuristicAlphabeta(copy, ghostMoves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
+				copy.advanceGame(MOVE.UP, moves);
+				upValue = getBestHeuristicAlphabeta(copy, moves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
 				break;
 			case 3:
-				copy.advanceGame(MOVE.DOWN, ghostMoves);
-				downValue = getBestHeuristicAlphabeta(copy, ghostMoves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
+				copy.advanceGame(MOVE.DOWN, moves);
+				downValue = getBestHeuristicAlphabeta(copy, moves, false, Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1);
 				break;
 			}
+			GamePool.release(copy);
 		}
 		
 		if (Evaluation.LOG_TIME) System.out.println(System.currentTimeMillis() - start);
@@ -9,6 +9,7 @@ import pacman.controllers.examples.move.Tree;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GamePool;
 
 public class BreadthFirstSearch {
 	public MOVE getMove(EnumMap<GHOST, MOVE> ghostMoves, Tree tree) {
@@ -26,12 +27,22 @@ public class BreadthFirstSearch {
 			node.setVisited(true);
 			if (node.getPredecessor() != null) { // regular Node
 				// set gameState and advance move based on current node
-				Game gameState = node.getPredecessor().getGameState().copy();
+				Node predecessor = node.getPredecessor();
+				Game gameState = GamePool.copyOf(predecessor.getGameState());
 				gameState.advanceGame(node.getMove(), ghostMoves);
 				node.setGameState(gameState);
+				
+				// the last neighbour has been expanded, so the predecessor's state is no longer needed (the head's is the caller's)
+				ArrayList<Node> siblings = predecessor.getNeighbors();
+				if (predecessor.getPredecessor() != null && siblings.get(siblings.size() - 1) == node) {
+					GamePool.release(predecessor.getGameState());
+					predecessor.setGameState(null);
+				}
 			}
 			if (node.getNeighbors() == null) { // end of tree branch
 				int value = Evaluation.evaluateGameState(node.getGameState());
+				GamePool.release(node.getGameState());
+				node.setGameState(null);
 				// get head node move type
 				Node nodeType = node.getPredecessor();
 				while (nodeType.getPredecessor().getMove() != MOVE.NEUTRAL) {
@@ -6,43 +6,76 @@ import java.util.EnumMap;
 import pacman.controllers.examples.move.Node;
 import pacman.controllers.examples.move.Tree;
 import pacman.game.Game;
+import pacman.game.GamePool;
+import pacman.game.UndoRecord;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 
 public class DepthFirstSearchRevamped {
+	// one undo record per level of the tree; the whole tree is searched on a single copy of the game
+	private final ArrayList<UndoRecord> undoRecords = new ArrayList<UndoRecord>();
+	private final TranspositionTable transpositionTable = new TranspositionTable();
+	private final GhostMoveStack ghostMoveStack = new GhostMoveStack();
+	
 	public MOVE getMove(EnumMap<GHOST, MOVE> ghostMoves, Tree tree) {
 		long start = System.currentTimeMillis();
-		ArrayList<Node> headNeighbors = tree.getHeadNode().getNeighbors();
+		Node headNode = tree.getHeadNode();
+		ArrayList<Node> headNeighbors = headNode.getNeighbors();
+		Game gameState = GamePool.copyOf(headNode.getGameState());
+		int depth = tree.getDepth() - 1;
+		transpositionTable.newSearch();
+		
+		int leftValue = getBestValue(ghostMoves, headNeighbors.get(0), gameState, depth);
+		int rightValue = getBestValue(ghostMoves, headNeighbors.get(1), gameState, depth);
+		int upValue = getBestValue(ghostMoves, headNeighbors.get(2), gameState, depth);
+		int downValue = getBestValue(ghostMoves, headNeighbors.get(3), gameState, depth);
 		
-		int leftValue = getBestValue(ghostMoves, headNeighbors.get(0));
-		int rightValue = getBestValue(ghostMoves, headNeighbors.get(1));
-		int upValue = getBestValue(ghostMoves, headNeighbors.get(2));
-		int downValue = getBestValue(ghostMoves, headNeighbors.get(3));
+		GamePool.release(gameState);
 		
 		if (Evaluation.LOG_TIME) System.out.println(System.currentTimeMillis() - start);
 		return Evaluation.getBestMove(leftValue, rightValue, upValue, downValue);
 	}
 	
-	public int getBestValue(EnumMap<GHOST, MOVE> ghostMoves, Node node) {
-		Game gameState = node.getPredecessor().getGameState().copy();
-		if (!isValidMove(gameState.getPossibleMoves(gameState.getPacmanCurrentNodeIndex()), node.getMove()))
+	/*
+	 * Makes the move of the node on gameState, searches the branch below it and then unmakes the move again,
+	 * so gameState is unchanged when this returns. depth is the number of moves below node.
+	 */
+	public int getBestValue(EnumMap<GHOST, MOVE> ghostMoves, Node node, Game gameState, int depth) {
+		if (!isValidMove(gameState.getPossibleMoves(gameState.getPacmanCurrentNodeIndex()), node.getMove())) {
 			return Integer.MIN_VALUE;
+		}
 		
-		gameState.advanceGame(node.getMove(), ghostMoves);
-		node.setGameState(gameState);
+		UndoRecord undo = getUndoRecord(depth);
+		ghostMoves = ghostMoveStack.copy(ghostMoves, depth);
+		gameState.makeMove(node.getMove(), ghostMoves, undo);
 		
-		ArrayList<Node> neighbors = node.getNeighbors();
-		if (neighbors == null) return Evaluation.evaluateGameState(gameState); // end of branch return heuristic
+		long key = TranspositionTable.key(gameState, ghostMoves, 0);
+		long entry = transpositionTable.probe(key, depth);
+		if (entry != TranspositionTable.MISS) {
+			gameState.unmakeMove(undo);
+			return TranspositionTable.value(entry);
+		}
 		
+		ArrayList<Node> neighbors = node.getNeighbors();
 		int bestValue = Integer.MIN_VALUE;
-		for (Node neighbor : neighbors) {
-			int value = getBestValue(ghostMoves, neighbor);
-			if (value > bestValue) bestValue = value;
+		if (neighbors == null) bestValue = Evaluation.evaluateGameState(gameState); // end of branch return heuristic
+		else {
+			for (Node neighbor : neighbors) {
+				int value = getBestValue(ghostMoves, neighbor, gameState, depth - 1);
+				if (value > bestValue) bestValue = value;
+			}
 		}
+		transpositionTable.store(key, depth, bestValue, TranspositionTable.EXACT);
 		
+		gameState.unmakeMove(undo);
 		return bestValue;
 	}
 	
+	private UndoRecord getUndoRecord(int depth) {
+		while (undoRecords.size() <= depth) undoRecords.add(new UndoRecord());
+		return undoRecords.get(depth);
+	}
+	
 	boolean isValidMove(MOVE[] validMoves, MOVE move) {
 		for (MOVE validMove : validMoves) {
 			if (move == validMove) return true;
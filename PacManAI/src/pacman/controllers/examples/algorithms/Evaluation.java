@@ -1,7 +1,6 @@
 package pacman.controllers.examples.algorithms;
 
 import pacman.game.Game;
-import pacman.game.Constants.DM;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 
@@ -16,7 +15,11 @@ public class Evaluation {
 	// too small and pacman will not see ghosts and get itself trapped
 	private static final int MIN_GHOST_DISTANCE = 20;
 	private static final int MIN_EDIBLE_GHOST_DISTANCE = 100;
-	public static final int DEPTH = 7;
+	// the depth of the searches backed by a transposition table, which only expand the distinct states
+	public static final int DEPTH = 10;
+	// the depth of the searches that build or expand all 4^depth leaves (e.g., AStar)
+	public static final int FULL_TREE_DEPTH = 7;
+	private static final GHOST[] GHOSTS = GHOST.values();
 	
 	/* Evaluates game state
 	 * Higher score when:
@@ -35,7 +38,7 @@ public class Evaluation {
 		int shortestGhostDistance = Integer.MAX_VALUE;
 		int secondShortestGhostDistance = Integer.MAX_VALUE;
 		
-		for (GHOST ghost : GHOST.values()) {
+		for (GHOST ghost : GHOSTS) {
 			// ghost still in lair, will return -1 and skew distance results
 			if (gameState.getGhostLairTime(ghost) > 0) continue;
 			
@@ -84,14 +87,20 @@ public class Evaluation {
 			// no else because there is no incentive to not be near edible ghost
 		}
 		
-		int[] activePillIndices = gameState.getActivePillsIndices();
-		int[] activePowerPillIndices = gameState.getActivePowerPillsIndices();
-		int[] pillIndices = new int[activePillIndices.length + activePowerPillIndices.length];
-		System.arraycopy(activePillIndices, 0, pillIndices, 0, activePillIndices.length);
-		System.arraycopy(activePowerPillIndices, 0, pillIndices, activePillIndices.length, activePowerPillIndices.length);
-		
-		int shortestPillDistance =  gameState.getShortestPathDistance(pacmanNode,
-				gameState.getClosestNodeIndexFromNodeIndex(pacmanNode, pillIndices, DM.PATH));
+		// distance to the closest active pill or power pill, without creating arrays of the active pills
+		int shortestPillDistance = Integer.MAX_VALUE;
+		int[] pillIndices = gameState.getPillIndices();
+		for (int i = 0; i < pillIndices.length; i++) {
+			if (gameState.isPillStillAvailable(i))
+				shortestPillDistance = Math.min(shortestPillDistance, gameState.getShortestPathDistance(pacmanNode, pillIndices[i]));
+		}
+		int[] powerPillIndices = gameState.getPowerPillIndices();
+		for (int i = 0; i < powerPillIndices.length; i++) {
+			if (gameState.isPowerPillStillAvailable(i))
+				shortestPillDistance = Math.min(shortestPillDistance, gameState.getShortestPathDistance(pacmanNode, powerPillIndices[i]));
+		}
+		if (shortestPillDistance == Integer.MAX_VALUE) // no pills left: as before, the closest node is -1
+			shortestPillDistance = gameState.getShortestPathDistance(pacmanNode, -1);
 		
 		return heuristic + gameState.getScore() * 100 + gameState.getPacmanNumberOfLivesRemaining() * 10000000 + (200 - shortestPillDistance);
 	}
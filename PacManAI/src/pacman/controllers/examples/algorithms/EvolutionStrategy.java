@@ -8,6 +8,7 @@ import pacman.controllers.examples.move.Node;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GamePool;
 
 public class EvolutionStrategy {
 	/*
@@ -22,7 +23,7 @@ public class EvolutionStrategy {
 		// initializing population; counts as one depth
 		for (int i = 0; i < 4; i++) {
 			Node childNode = new Node();
-			Game gameState = game.copy();
+			Game gameState = GamePool.copyOf(game);
 			switch(i) {
 			case 0:
 				gameState.advanceGame(MOVE.LEFT, ghostMoves);
@@ -53,7 +54,7 @@ public class EvolutionStrategy {
 			Node bestNode = population.peek();
 			for (int j = 0; j < 4; j++) {
 				Node childNode = new Node();
-				Game gameState = bestNode.getGameState().copy();
+				Game gameState = GamePool.copyOf(bestNode.getGameState());
 				switch(j) {
 				case 0:
 					gameState.advanceGame(MOVE.LEFT, ghostMoves);
@@ -80,8 +81,11 @@ public class EvolutionStrategy {
 			}
 		}
 		
+		MOVE bestMove = population.peek().getMove();
+		for (Node node : population) GamePool.release(node.getGameState());
+		
 		if (Evaluation.LOG_TIME) System.out.println(System.currentTimeMillis() - start);
-		return population.peek().getMove();
+		return bestMove;
 	}
 	
 	private class NodeComparator implements Comparator<Node> {
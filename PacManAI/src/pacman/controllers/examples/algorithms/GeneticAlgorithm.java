@@ -9,6 +9,7 @@ import java.util.Random;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GamePool;
 
 public class GeneticAlgorithm {
 	private class GeneticMove {
@@ -61,18 +62,20 @@ public class GeneticAlgorithm {
 		@Override
 		public int compare(GeneticMove firstMove, GeneticMove secondMove) {
 			if (firstMove.heuristic == -1) {
-				Game copy = gameState.copy();
+				Game copy = GamePool.copyOf(gameState);
 				for (MOVE move : firstMove.moves) {
 					copy.advanceGame(move, ghostMoves);
 				}
 				firstMove.heuristic = Evaluation.evaluateGameState(copy);
+				GamePool.release(copy);
 			}
 			if (secondMove.heuristic == -1) {
-				Game copy = gameState.copy();
+				Game copy = GamePool.copyOf(gameState);
 				for (MOVE move : secondMove.moves) {
 					copy.advanceGame(move, ghostMoves);
 				}
 				secondMove.heuristic = Evaluation.evaluateGameState(copy);
+				GamePool.release(copy);
 			}
 			if (firstMove.heuristic < secondMove.heuristic) {
 				return 1;
@@ -0,0 +1,26 @@
+package pacman.controllers.examples.algorithms;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+/*
+ * One map of ghost moves per level of a search. The game writes the moves the ghosts actually made into the map
+ * it is advanced with, so every node is advanced with a copy of the moves it was given: the moves a node passes
+ * on to its successors then only depend on the node itself, not on which of its siblings were searched (or
+ * answered by the transposition table) before it.
+ */
+class GhostMoveStack {
+	private final ArrayList<EnumMap<GHOST, MOVE>> maps = new ArrayList<EnumMap<GHOST, MOVE>>();
+	
+	// returns the map of the level supplied, overwritten with the moves supplied
+	EnumMap<GHOST, MOVE> copy(EnumMap<GHOST, MOVE> ghostMoves, int depth) {
+		while (maps.size() <= depth) maps.add(new EnumMap<GHOST, MOVE>(GHOST.class));
+		EnumMap<GHOST, MOVE> map = maps.get(depth);
+		map.clear();
+		map.putAll(ghostMoves);
+		return map;
+	}
+}
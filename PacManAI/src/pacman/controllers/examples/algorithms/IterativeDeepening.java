@@ -8,21 +8,26 @@ import pacman.controllers.examples.move.Tree;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GamePool;
 
 public class IterativeDeepening {
+	private final TranspositionTable transpositionTable = new TranspositionTable();
+	private final GhostMoveStack ghostMoveStack = new GhostMoveStack();
+	
 	// simulates iterative deepening; true iterative deepening is not possible
 	// since we are not searching for a goal node
 	public MOVE getMove(Game game, EnumMap<GHOST, MOVE> ghostMoves, int depth) {
 		long start = System.currentTimeMillis();
+		transpositionTable.newSearch();
 		for (int i = 1; i <= depth; i++) {
 			Tree tree = new Tree(i);
 			tree.getHeadNode().setGameState(game);
 			ArrayList<Node> headNeighbors = tree.getHeadNode().getNeighbors();
 			
-			int leftValue = getBestValue(ghostMoves, headNeighbors.get(0));
-			int rightValue = getBestValue(ghostMoves, headNeighbors.get(1));
-			int upValue = getBestValue(ghostMoves, headNeighbors.get(2));
-			int downValue = getBestValue(ghostMoves, headNeighbors.get(3));
+			int leftValue = getBestValue(ghostMoves, headNeighbors.get(0), i - 1);
+			int rightValue = getBestValue(ghostMoves, headNeighbors.get(1), i - 1);
+			int upValue = getBestValue(ghostMoves, headNeighbors.get(2), i - 1);
+			int downValue = getBestValue(ghostMoves, headNeighbors.get(3), i - 1);
 			
 			if (i == depth) {
 				if (Evaluation.LOG_TIME) System.out.println(System.currentTimeMillis() - start);
@@ -33,20 +38,35 @@ public class IterativeDeepening {
 		return null; // should never reach this point
 	}
 	
-	public int getBestValue(EnumMap<GHOST, MOVE> ghostMoves, Node node) {
-		Game gameState = node.getPredecessor().getGameState().copy();
+	// depth is the number of moves below node
+	public int getBestValue(EnumMap<GHOST, MOVE> ghostMoves, Node node, int depth) {
+		Game gameState = GamePool.copyOf(node.getPredecessor().getGameState());
+		ghostMoves = ghostMoveStack.copy(ghostMoves, depth);
 		gameState.advanceGame(node.getMove(), ghostMoves);
+		
+		// states reached before (e.g., through an impossible move that was corrected) are not searched again
+		long key = TranspositionTable.key(gameState, ghostMoves, 0);
+		long entry = transpositionTable.probe(key, depth);
+		if (entry != TranspositionTable.MISS) {
+			GamePool.release(gameState);
+			return TranspositionTable.value(entry);
+		}
 		node.setGameState(gameState);
 		
 		ArrayList<Node> neighbors = node.getNeighbors();
-		if (neighbors == null) return Evaluation.evaluateGameState(gameState); // end of branch return heuristic
-		
 		int bestValue = Integer.MIN_VALUE;
-		for (Node neighbor : neighbors) {
-			int value = getBestValue(ghostMoves, neighbor);
-			if (value > bestValue) bestValue = value;
+		if (neighbors == null) bestValue = Evaluation.evaluateGameState(gameState); // end of branch return heuristic
+		else {
+			for (Node neighbor : neighbors) {
+				int value = getBestValue(ghostMoves, neighbor, depth - 1);
+				if (value > bestValue) bestValue = value;
+			}
 		}
+		transpositionTable.store(key, depth, bestValue, TranspositionTable.EXACT);
 		
+		// the state is only needed while the branch is searched
+		node.setGameState(null);
+		GamePool.release(gameState);
 		return bestValue;
 	}
 }
@@ -7,6 +7,7 @@ import java.util.Random;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.GamePool;
 
 public class Perceptron {
 	/*
@@ -69,11 +70,12 @@ public class Perceptron {
 		MoveSet bestMoveSet = null;
 		
 		for (MoveSet moveSet : moveSets) {
-			Game copy = gameState.copy();
+			Game copy = GamePool.copyOf(gameState);
 			for (MOVE move : moveSet.moves) {
 				copy.advanceGame(move, ghostMoves);
 			}
 			moveSet.heuristic = Evaluation.evaluateGameState(copy);
+			GamePool.release(copy);
 			if (moveSet.heuristic > bestHeuristic) {
 				bestHeuristic = moveSet.heuristic;
 				bestMoveSet = moveSet;
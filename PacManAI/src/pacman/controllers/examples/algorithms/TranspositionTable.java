@@ -0,0 +1,109 @@
+package pacman.controllers.examples.algorithms;
+
+import java.util.EnumMap;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/*
+ * Fixed-size transposition table for the depth-limited searches. Many branches of the search tree reach the
+ * same state (e.g., an impossible move is corrected into the same successor as a possible one), so the value
+ * of a state searched to a given depth is stored and reused instead of searching the branch again.
+ * 
+ * Each slot is two longs: the key xor the data, and the data. A reader only accepts a slot if the first long
+ * xor the second equals its key, so slots torn by concurrent writers are simply misses and the table can be
+ * shared between threads without locks. A slot is replaced if it is empty, was written by an earlier search,
+ * or holds a shallower (or equally deep) result. A bound never replaces a deeper entry of its own state from the
+ * same search, but an exact value does.
+ */
+public class TranspositionTable {
+	public static final int DEFAULT_SIZE = 1 << 18; // number of slots, 16 bytes each
+	
+	// bounds, for searches with pruning
+	public static final int EXACT = 0, LOWER_BOUND = 1, UPPER_BOUND = 2;
+	public static final long MISS = 0;
+	
+	private static final long USED = 1L << 63;
+	private static final GHOST[] GHOSTS = GHOST.values();
+	
+	private final long[] slots;
+	private final int mask;
+	private volatile int age;
+	
+	public TranspositionTable() {
+		this(DEFAULT_SIZE);
+	}
+	
+	// the size is rounded up to a power of two
+	public TranspositionTable(int size) {
+		int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+		slots = new long[2 * capacity];
+		mask = capacity - 1;
+	}
+	
+	// call once per move: entries of earlier searches are replaced first
+	public void newSearch() {
+		age = (age + 1) & 0xFF;
+	}
+	
+	/*
+	 * Returns the key of a game searched with the ghost moves supplied (the moves determine the successors) and
+	 * a salt that tells different kinds of nodes apart (e.g., maximizing and minimizing nodes). The score is
+	 * included as the evaluation depends on it, and so is the score of eating the next ghost (i.e., the ghost eat
+	 * multiplier), which decides the scores below the node. The times and the random number state are not: a state
+	 * reached after a different number of ticks (e.g., LEFT,RIGHT,LEFT against LEFT) shares the entry, which is
+	 * an approximation where a level times out or the ghosts reverse within the remaining depth.
+	 */
+	public static long key(Game game, EnumMap<GHOST, MOVE> ghostMoves, int salt) {
+		long key = game.stateHash() ^ mix((long) game.getScore() << 24 | (long) game.getGhostCurrentEdibleScore() << 8 | salt);
+		for (GHOST ghost : GHOSTS) {
+			MOVE move = ghostMoves.get(ghost);
+			key ^= mix((ghost.ordinal() + 1L) << 40 | (move == null ? 7 : move.ordinal()));
+		}
+		return key;
+	}
+	
+	// returns the data stored for the key with at least the depth supplied, or MISS
+	public long probe(long key, int depth) {
+		int index = 2 * ((int) key & mask);
+		long data = slots[index + 1];
+		if (data == MISS || (slots[index] ^ data) != key || depth(data) < depth) return MISS;
+		return data;
+	}
+	
+	public void store(long key, int depth, int value, int bound) {
+		int index = 2 * ((int) key & mask);
+		long old = slots[index + 1];
+		int currentAge = age;
+		
+		if (old != MISS && age(old) == currentAge && depth(old) > depth && ((slots[index] ^ old) != key || bound != EXACT)) return;
+		
+		long data = USED | (long) currentAge << 48 | (long) (bound & 0xFF) << 40 | (long) (depth & 0xFF) << 32 | (value & 0xFFFFFFFFL);
+		slots[index] = key ^ data;
+		slots[index + 1] = data;
+	}
+	
+	public static int value(long data) {
+		return (int) data;
+	}
+	
+	public static int depth(long data) {
+		return (int) (data >>> 32) & 0xFF;
+	}
+	
+	public static int bound(long data) {
+		return (int) (data >>> 40) & 0xFF;
+	}
+	
+	private static int age(long data) {
+		return (int) (data >>> 48) & 0xFF;
+	}
+	
+	// SplitMix64 finaliser
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
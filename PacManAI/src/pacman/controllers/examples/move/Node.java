@@ -12,6 +12,8 @@ public class Node {
 	private Node predecessor;
 	private MOVE move;
 	private boolean visited;
+	// the number of levels of the tree below this node whose nodes are created on demand, see getNeighbors()
+	private int depth;
 
 	public Node() {
 		this(MOVE.NEUTRAL, null);
@@ -22,7 +24,20 @@ public class Node {
 		this.predecessor = predecessor;
 	}
 	
+	// a node of a tree of the depth supplied, whose neighbors are created when they are first asked for
+	Node(MOVE move, Node predecessor, int depth) {
+		this(move, predecessor);
+		this.depth = depth;
+	}
+	
 	public ArrayList<Node> getNeighbors() {
+		if (neighbors == null && depth > 0) {
+			neighbors = new ArrayList<Node>(4);
+			neighbors.add(new Node(MOVE.LEFT, this, depth - 1));
+			neighbors.add(new Node(MOVE.RIGHT, this, depth - 1));
+			neighbors.add(new Node(MOVE.UP, this, depth - 1));
+			neighbors.add(new Node(MOVE.DOWN, this, depth - 1));
+		}
 		return neighbors;
 	}
 
@@ -1,46 +1,28 @@
 package pacman.controllers.examples.move;
 
-import java.util.ArrayList;
-
 import pacman.game.Constants.MOVE;
 
 public class Tree {
 	
 	// headNode supports the branches, has no other major function
 	private Node headNode;
+	private final int depth;
 	
+	/*
+	 * The nodes below the head node are only created when a search first asks for them (see Node.getNeighbors()),
+	 * so the time and memory a tree takes are those of the branches searched, not of all 4^depth leaves.
+	 */
 	public Tree(int depth) {
-		headNode = new Node();
-		
-		ArrayList<Node> currentDepthNodes = new ArrayList<Node>();
-		ArrayList<Node> nextDepthNodes = new ArrayList<Node>();
-		currentDepthNodes.add(headNode);
-		for (int i = 0; i < depth; i++) {
-			for (Node node : currentDepthNodes) {
-				Node left = new Node(MOVE.LEFT, node);
-				Node right = new Node(MOVE.RIGHT, node);
-				Node up = new Node(MOVE.UP, node);
-				Node down = new Node(MOVE.DOWN, node);
-				
-				nextDepthNodes.add(left);
-				nextDepthNodes.add(right);
-				nextDepthNodes.add(up);
-				nextDepthNodes.add(down);
-				
-				ArrayList<Node> neighbors = new ArrayList<Node>(4);
-				neighbors.add(left);
-				neighbors.add(right);
-				neighbors.add(up);
-				neighbors.add(down);
-				node.setNeighbors(neighbors);
-			}
-			
-			currentDepthNodes = nextDepthNodes;
-			nextDepthNodes = new ArrayList<Node>();
-		}
+		this.depth = depth;
+		headNode = new Node(MOVE.NEUTRAL, null, depth);
 	}
 	
 	public Node getHeadNode() {
 		return headNode;
 	}
+	
+	// the number of moves from the head node to the leaves
+	public int getDepth() {
+		return depth;
+	}
 }
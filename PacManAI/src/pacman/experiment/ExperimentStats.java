@@ -0,0 +1,188 @@
+package pacman.experiment;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics of the games of an experiment: the distribution of the
+ * score (mean, standard deviation, standard error and percentiles) and the
+ * level and time the games reached. The statistics are computed from all
+ * trials at once, so they do not depend on the order in which the trials
+ * finished.
+ */
+public class ExperimentStats {
+	//the 97.5% quantiles of Student's t-distribution with 1 to 30 degrees of freedom
+	private static final double[] T_975 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+			2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060,
+			2.056, 2.052, 2.048, 2.045, 2.042 };
+
+	private final int[] scores, levels, times;
+	private final int[] sortedScores;
+	private final double mean, standardDeviation;
+
+	/**
+	 * Creates the statistics of an experiment. Entry i of each array is the
+	 * result of trial i.
+	 *
+	 * @param scores
+	 *            The final scores
+	 * @param levels
+	 *            The levels reached (0 is the first level)
+	 * @param times
+	 *            The total times (number of ticks) of the games
+	 */
+	public ExperimentStats(int[] scores, int[] levels, int[] times) {
+		if (scores.length == 0 || levels.length != scores.length || times.length != scores.length)
+			throw new IllegalArgumentException("one score, level and time per trial is required");
+
+		this.scores = scores.clone();
+		this.levels = levels.clone();
+		this.times = times.clone();
+
+		sortedScores = scores.clone();
+		Arrays.sort(sortedScores);
+
+		mean = mean(scores);
+
+		double sumOfSquares = 0;
+
+		for (int score : scores)
+			sumOfSquares += (score - mean) * (score - mean);
+
+		standardDeviation = scores.length > 1 ? Math.sqrt(sumOfSquares / (scores.length - 1)) : 0;
+	}
+
+	public int getTrials() {
+		return scores.length;
+	}
+
+	public double getMeanScore() {
+		return mean;
+	}
+
+	/**
+	 * Returns the sample standard deviation of the score.
+	 *
+	 * @return The standard deviation
+	 */
+	public double getStandardDeviation() {
+		return standardDeviation;
+	}
+
+	/**
+	 * Returns the standard error of the mean score.
+	 *
+	 * @return The standard error
+	 */
+	public double getStandardError() {
+		return standardDeviation / Math.sqrt(scores.length);
+	}
+
+	/**
+	 * Returns the half-width of the 95% confidence interval of the mean score,
+	 * i.e., the interval is the mean plus or minus this value, using the
+	 * critical value of Student's t-distribution: from a table for up to 30
+	 * degrees of freedom and from the Cornish-Fisher expansion beyond.
+	 *
+	 * @return The half-width of the confidence interval (0 for a single trial)
+	 */
+	public double getConfidenceHalfWidth() {
+		if (scores.length < 2)
+			return 0;
+
+		int df = scores.length - 1;
+		double t;
+
+		if (df <= T_975.length)
+			t = T_975[df - 1];
+		else {
+			double z = 1.959964, z2 = z * z;
+
+			t = z + z * (z2 + 1) / (4 * df) + z * ((5 * z2 + 16) * z2 + 3) / (96.0 * df * df)
+					+ z * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384.0 * df * df * df);
+		}
+
+		return t * getStandardError();
+	}
+
+	/**
+	 * Returns a percentile of the score, interpolating linearly between the
+	 * closest ranks.
+	 *
+	 * @param p
+	 *            The percentile, between 0 and 100
+	 * @return The score at that percentile
+	 */
+	public double getScorePercentile(double p) {
+		double rank = Math.max(0, Math.min(100, p)) / 100 * (sortedScores.length - 1);
+		int below = (int) Math.floor(rank);
+		int above = Math.min(below + 1, sortedScores.length - 1);
+
+		return sortedScores[below] + (rank - below) * (sortedScores[above] - sortedScores[below]);
+	}
+
+	public int getMinScore() {
+		return sortedScores[0];
+	}
+
+	public int getMaxScore() {
+		return sortedScores[sortedScores.length - 1];
+	}
+
+	public double getMeanLevel() {
+		return mean(levels);
+	}
+
+	public int getMaxLevel() {
+		int max = 0;
+
+		for (int level : levels)
+			max = Math.max(max, level);
+
+		return max;
+	}
+
+	public double getMeanTime() {
+		return mean(times);
+	}
+
+	/**
+	 * Returns the results of the trials, in the order of the trials.
+	 *
+	 * @return The scores
+	 */
+	public int[] getScores() {
+		return scores.clone();
+	}
+
+	public int[] getLevels() {
+		return levels.clone();
+	}
+
+	public int[] getTimes() {
+		return times.clone();
+	}
+
+	private static double mean(int[] values) {
+		double sum = 0;
+
+		for (int value : values)
+			sum += value;
+
+		return sum / values.length;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format("trials      %d%n", getTrials()));
+		sb.append(String.format("score       mean %.1f, sd %.1f, se %.1f, 95%% ci +/- %.1f%n", mean, standardDeviation,
+				getStandardError(), getConfidenceHalfWidth()));
+		sb.append(String.format("percentiles min %d, 5%% %.0f, 25%% %.0f, 50%% %.0f, 75%% %.0f, 95%% %.0f, max %d%n",
+				getMinScore(), getScorePercentile(5), getScorePercentile(25), getScorePercentile(50),
+				getScorePercentile(75), getScorePercentile(95), getMaxScore()));
+		sb.append(String.format("level       mean %.2f, max %d%n", getMeanLevel(), getMaxLevel()));
+		sb.append(String.format("time        mean %.0f%n", getMeanTime()));
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,192 @@
+package pacman.experiment;
+
+import static pacman.game.Constants.DELAY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+import pacman.game.MoveRecorder;
+
+/**
+ * Runs the trials of an experiment (see Executor.runExperiment()) on several
+ * threads. Controllers are usually not thread-safe and may keep state between
+ * games, so they are created by factories: every trial gets a new Ms Pac-Man
+ * and a new ghosts controller. The seed of trial i is derived from the master
+ * seed and i only, so an experiment produces the same results whatever the
+ * number of threads (as long as the controllers themselves are deterministic,
+ * i.e., do not depend on the wall-clock time). The games controllers are
+ * handed carry a random state salted with a secret that is also derived from
+ * the master seed (see secret()), so controllers cannot predict the random
+ * events of the game, yet those that simulate them stay reproducible.
+ */
+public class ParallelExperiment {
+	private final Supplier<? extends Controller<MOVE>> pacManFactory;
+	private final Supplier<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory;
+	private final int threads;
+
+	/**
+	 * Creates an experiment.
+	 *
+	 * @param pacManFactory
+	 *            Creates the Ms Pac-Man controller of a trial
+	 * @param ghostFactory
+	 *            Creates the ghosts controller of a trial
+	 * @param threads
+	 *            The number of threads, e.g.,
+	 *            Runtime.getRuntime().availableProcessors()
+	 */
+	public ParallelExperiment(Supplier<? extends Controller<MOVE>> pacManFactory,
+			Supplier<? extends Controller<EnumMap<GHOST, MOVE>>> ghostFactory, int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("at least one thread is required");
+
+		this.pacManFactory = pacManFactory;
+		this.ghostFactory = ghostFactory;
+		this.threads = threads;
+	}
+
+	/**
+	 * Plays the trials and returns their statistics.
+	 *
+	 * @param trials
+	 *            The number of games
+	 * @param masterSeed
+	 *            The seed the seeds of the games are derived from
+	 * @return The statistics of the games
+	 */
+	public ExperimentStats run(int trials, long masterSeed) {
+		final int[] scores = new int[trials], levels = new int[trials], times = new int[trials];
+
+		Game.warmUp();
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>(trials);
+
+		try {
+			for (int i = 0; i < trials; i++) {
+				final int trial = i;
+
+				futures.add(pool.submit(new Runnable() {
+					public void run() {
+						Game game = play(trialSeed(masterSeed, trial), secret(masterSeed));
+
+						scores[trial] = game.getScore();
+						levels[trial] = game.getCurrentLevel();
+						times[trial] = game.getTotalTime();
+					}
+				}));
+			}
+
+			//waiting for every future also makes the results of the workers visible to this thread
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("the experiment was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("a trial failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		return new ExperimentStats(scores, levels, times);
+	}
+
+	/**
+	 * Plays one game with new controllers, like a trial of
+	 * Executor.runExperiment().
+	 *
+	 * @param seed
+	 *            The seed of the game
+	 * @param secret
+	 *            The secret the states handed to the controllers are salted
+	 *            with (see secret())
+	 * @return The game once it is over
+	 */
+	public Game play(long seed, long secret) {
+		Controller<MOVE> pacManController = pacManFactory.get();
+		Controller<EnumMap<GHOST, MOVE>> ghostController = ghostFactory.get();
+		Game game = new Game(seed, 0, secret);
+
+		while (!game.gameOver()) {
+			game.advanceGame(pacManController.getMove(game.getReadOnlyView(), System.currentTimeMillis() + DELAY),
+					ghostController.getMove(game.getReadOnlyView(), System.currentTimeMillis() + DELAY));
+		}
+
+		return game;
+	}
+
+	/**
+	 * Plays one game with new controllers like play(long, long), and records
+	 * its moves with a MoveRecorder, so it can be replayed with MoveReplay.
+	 *
+	 * @param seed
+	 *            The seed of the game
+	 * @param secret
+	 *            The secret the states handed to the controllers are salted
+	 *            with
+	 * @param fileName
+	 *            The file the moves are recorded to
+	 * @return The game once it is over
+	 * @throws IOException
+	 *             If the moves cannot be recorded
+	 */
+	public Game play(long seed, long secret, String fileName) throws IOException {
+		Controller<MOVE> pacManController = pacManFactory.get();
+		Controller<EnumMap<GHOST, MOVE>> ghostController = ghostFactory.get();
+		Game game = new Game(seed, 0, secret);
+
+		try (MoveRecorder recorder = new MoveRecorder(fileName, game)) {
+			while (!game.gameOver()) {
+				recorder.advanceGame(
+						pacManController.getMove(game.getReadOnlyView(), System.currentTimeMillis() + DELAY),
+						ghostController.getMove(game.getReadOnlyView(), System.currentTimeMillis() + DELAY));
+			}
+		}
+
+		return game;
+	}
+
+	/**
+	 * Returns the seed of a trial: the SplitMix64 hash of the master seed and
+	 * the trial number, so that neighbouring trials get unrelated seeds.
+	 *
+	 * @param masterSeed
+	 *            The seed of the experiment
+	 * @param trial
+	 *            The number of the trial
+	 * @return The seed of the trial
+	 */
+	public static long trialSeed(long masterSeed, int trial) {
+		long z = masterSeed + (trial + 1) * 0x9E3779B97F4A7C15L;
+
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the secret the games of an experiment are salted with (see
+	 * Game(long, int, long)): a hash of the master seed that is unrelated to
+	 * the seeds of the trials.
+	 *
+	 * @param masterSeed
+	 *            The seed of the experiment
+	 * @return The secret of the experiment
+	 */
+	public static long secret(long masterSeed) {
+		return trialSeed(~masterSeed, -1);
+	}
+}
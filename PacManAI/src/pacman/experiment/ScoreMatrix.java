@@ -0,0 +1,117 @@
+package pacman.experiment;
+
+import java.util.List;
+
+/**
+ * The result of a tournament: the statistics of the Ms Pac-Man score for every
+ * pairing of a Ms Pac-Man controller (row) and a ghosts controller (column).
+ */
+public class ScoreMatrix {
+	private final String[] pacManNames, ghostNames;
+	private final ExperimentStats[][] stats;
+
+	ScoreMatrix(List<String> pacManNames, List<String> ghostNames, ExperimentStats[][] stats) {
+		this.pacManNames = pacManNames.toArray(new String[0]);
+		this.ghostNames = ghostNames.toArray(new String[0]);
+		this.stats = stats;
+	}
+
+	public String[] getPacManNames() {
+		return pacManNames.clone();
+	}
+
+	public String[] getGhostNames() {
+		return ghostNames.clone();
+	}
+
+	/**
+	 * Returns the statistics of one pairing.
+	 *
+	 * @param pacMan
+	 *            The index of the Ms Pac-Man controller
+	 * @param ghosts
+	 *            The index of the ghosts controller
+	 * @return The statistics of the games of the pairing
+	 */
+	public ExperimentStats getStats(int pacMan, int ghosts) {
+		return stats[pacMan][ghosts];
+	}
+
+	/**
+	 * Returns the mean score of a Ms Pac-Man controller over all ghosts
+	 * controllers, each weighted equally.
+	 *
+	 * @param pacMan
+	 *            The index of the Ms Pac-Man controller
+	 * @return The mean of the mean scores of the row
+	 */
+	public double getPacManMean(int pacMan) {
+		double sum = 0;
+
+		for (ExperimentStats cell : stats[pacMan])
+			sum += cell.getMeanScore();
+
+		return sum / ghostNames.length;
+	}
+
+	/**
+	 * Returns the mean score conceded by a ghosts controller over all Ms
+	 * Pac-Man controllers, each weighted equally (lower is better).
+	 *
+	 * @param ghosts
+	 *            The index of the ghosts controller
+	 * @return The mean of the mean scores of the column
+	 */
+	public double getGhostsMean(int ghosts) {
+		double sum = 0;
+
+		for (ExperimentStats[] row : stats)
+			sum += row[ghosts].getMeanScore();
+
+		return sum / pacManNames.length;
+	}
+
+	/**
+	 * Formats the matrix as a table of mean scores with the half-widths of
+	 * their 95% confidence intervals, with the row and column means.
+	 */
+	public String toString() {
+		int width = 8;
+
+		for (String name : pacManNames)
+			width = Math.max(width, name.length());
+
+		int cell = 18;
+
+		for (String name : ghostNames)
+			cell = Math.max(cell, name.length() + 1);
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(String.format("%-" + width + "s", ""));
+
+		for (String name : ghostNames)
+			sb.append(String.format("%" + cell + "s", name));
+
+		sb.append(String.format("%" + cell + "s%n", "mean"));
+
+		for (int i = 0; i < pacManNames.length; i++) {
+			sb.append(String.format("%-" + width + "s", pacManNames[i]));
+
+			for (ExperimentStats pairing : stats[i])
+				sb.append(String.format("%" + cell + "s",
+						String.format("%.0f +/- %.0f", pairing.getMeanScore(), pairing.getConfidenceHalfWidth())));
+
+			sb.append(String.format("%" + cell + ".0f%n", getPacManMean(i)));
+		}
+
+		sb.append(String.format("%-" + width + "s", "mean"));
+
+		for (int j = 0; j < ghostNames.length; j++)
+			sb.append(String.format("%" + cell + ".0f", getGhostsMean(j)));
+
+		sb.append(String.format("%n"));
+
+		return sb.toString();
+	}
+}
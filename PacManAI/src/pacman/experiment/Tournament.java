@@ -0,0 +1,277 @@
+package pacman.experiment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.AggressiveGhosts;
+import pacman.controllers.examples.Legacy;
+import pacman.controllers.examples.Legacy2TheReckoning;
+import pacman.controllers.examples.NearestPillPacMan;
+import pacman.controllers.examples.RandomGhosts;
+import pacman.controllers.examples.RandomNonRevPacMan;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.StarterPacMan;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * A round-robin tournament: every Ms Pac-Man controller plays a number of games
+ * against every ghosts controller. Each game is an independent job on a
+ * work-stealing pool, so long pairings do not hold up the others, and is
+ * played with new controllers like a trial of ParallelExperiment. Game i of
+ * every pairing uses the same seed, ParallelExperiment.trialSeed(masterSeed,
+ * i), and the same secret, ParallelExperiment.secret(masterSeed), so the
+ * pairings are compared on the same games.
+ *
+ * The result of each game is appended to a CSV file as soon as it is known, so
+ * a long tournament can be followed (or salvaged) while it runs. Once all games
+ * are over, the scores are summarised in a ScoreMatrix. If an archive directory
+ * is set, the moves of every game are recorded there with a MoveRecorder, which
+ * takes a few kilobytes per game.
+ */
+public class Tournament {
+	private final List<String> pacManNames = new ArrayList<String>(), ghostNames = new ArrayList<String>();
+	private final List<Supplier<? extends Controller<MOVE>>> pacManFactories = new ArrayList<Supplier<? extends Controller<MOVE>>>();
+	private final List<Supplier<? extends Controller<EnumMap<GHOST, MOVE>>>> ghostFactories = new ArrayList<Supplier<? extends Controller<EnumMap<GHOST, MOVE>>>>();
+	private final int threads;
+	private File archive;
+
+	/**
+	 * Creates a tournament without any controllers.
+	 *
+	 * @param threads
+	 *            The parallelism of the pool, e.g.,
+	 *            Runtime.getRuntime().availableProcessors()
+	 */
+	public Tournament(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("at least one thread is required");
+
+		this.threads = threads;
+	}
+
+	/**
+	 * Adds a Ms Pac-Man controller.
+	 *
+	 * @param name
+	 *            The name of the controller in the results
+	 * @param factory
+	 *            Creates the controller of a game
+	 * @return This tournament
+	 */
+	public Tournament addPacMan(String name, Supplier<? extends Controller<MOVE>> factory) {
+		pacManNames.add(name);
+		pacManFactories.add(factory);
+
+		return this;
+	}
+
+	/**
+	 * Adds a ghosts controller.
+	 *
+	 * @param name
+	 *            The name of the controller in the results
+	 * @param factory
+	 *            Creates the controller of a game
+	 * @return This tournament
+	 */
+	public Tournament addGhosts(String name, Supplier<? extends Controller<EnumMap<GHOST, MOVE>>> factory) {
+		ghostNames.add(name);
+		ghostFactories.add(factory);
+
+		return this;
+	}
+
+	/**
+	 * Sets the directory the moves of every game are recorded to, as
+	 * &lt;pacman&gt;-&lt;ghosts&gt;-&lt;game&gt;.pmv, for MoveReplay (or
+	 * Executor.replayGame()). The directory is created if need be.
+	 *
+	 * @param directory
+	 *            The directory, or null to record nothing (the default)
+	 * @return This tournament
+	 */
+	public Tournament setArchive(String directory) {
+		archive = directory == null ? null : new File(directory);
+
+		return this;
+	}
+
+	/**
+	 * Plays all games of the tournament.
+	 *
+	 * @param games
+	 *            The number of games per pairing
+	 * @param masterSeed
+	 *            The seed the seeds of the games are derived from
+	 * @param fileName
+	 *            The CSV file the result of every game is written to, or null
+	 * @return The score matrix
+	 */
+	public ScoreMatrix run(int games, long masterSeed, String fileName) {
+		int rows = pacManNames.size(), columns = ghostNames.size();
+
+		if (rows == 0 || columns == 0 || games < 1)
+			throw new IllegalArgumentException("at least one controller per side and one game are required");
+
+		ParallelExperiment[][] pairings = new ParallelExperiment[rows][columns];
+
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < columns; j++)
+				pairings[i][j] = new ParallelExperiment(pacManFactories.get(i), ghostFactories.get(j), 1);
+
+		int[][][] scores = new int[rows][columns][games], levels = new int[rows][columns][games],
+				times = new int[rows][columns][games];
+
+		Game.warmUp();
+
+		if (archive != null && !archive.isDirectory() && !archive.mkdirs())
+			throw new UncheckedIOException(new IOException("could not create the archive " + archive));
+
+		ExecutorService pool = Executors.newWorkStealingPool(threads);
+		CompletionService<Outcome> outcomes = new ExecutorCompletionService<Outcome>(pool);
+		PrintWriter out = null;
+
+		try {
+			if (fileName != null) {
+				out = new PrintWriter(new FileOutputStream(fileName));
+				out.println("pacman,ghosts,game,seed,score,level,time");
+				out.flush();
+			}
+
+			//game-major order, so that all pairings progress at the same rate
+			for (int k = 0; k < games; k++)
+				for (int i = 0; i < rows; i++)
+					for (int j = 0; j < columns; j++)
+						outcomes.submit(new Outcome(pairings[i][j], i, j, k, ParallelExperiment.trialSeed(masterSeed, k),
+								ParallelExperiment.secret(masterSeed), archiveFile(i, j, k)));
+
+			for (int n = rows * columns * games; n > 0; n--) {
+				Outcome outcome = outcomes.take().get();
+
+				scores[outcome.pacMan][outcome.ghosts][outcome.game] = outcome.score;
+				levels[outcome.pacMan][outcome.ghosts][outcome.game] = outcome.level;
+				times[outcome.pacMan][outcome.ghosts][outcome.game] = outcome.time;
+
+				if (out != null) {
+					out.println(pacManNames.get(outcome.pacMan) + "," + ghostNames.get(outcome.ghosts) + ","
+							+ outcome.game + "," + outcome.seed + "," + outcome.score + "," + outcome.level + ","
+							+ outcome.time);
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("could not write the results to " + fileName, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("the tournament was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("a game failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+
+			if (out != null)
+				out.close();
+		}
+
+		ExperimentStats[][] stats = new ExperimentStats[rows][columns];
+
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < columns; j++)
+				stats[i][j] = new ExperimentStats(scores[i][j], levels[i][j], times[i][j]);
+
+		return new ScoreMatrix(pacManNames, ghostNames, stats);
+	}
+
+	//the file the moves of game k of a pairing are recorded to, if any
+	private String archiveFile(int pacMan, int ghosts, int k) {
+		if (archive == null)
+			return null;
+
+		return new File(archive, pacManNames.get(pacMan) + "-" + ghostNames.get(ghosts) + "-" + k + ".pmv").getPath();
+	}
+
+	/**
+	 * Plays the example controllers against each other and prints the score
+	 * matrix. Note that StarterGhosts seeds its random numbers from the clock,
+	 * so its column differs from run to run.
+	 *
+	 * @param args
+	 *            [games per pairing (10)] [master seed (0)] [CSV file
+	 *            (tournament.csv)] [threads (all processors)] [directory the
+	 *            moves of every game are archived to (none)]
+	 */
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		String fileName = args.length > 2 ? args[2] : "tournament.csv";
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		String archive = args.length > 4 ? args[4] : null;
+
+		Tournament tournament = new Tournament(threads)
+				.addPacMan("StarterPacMan", StarterPacMan::new)
+				.addPacMan("NearestPillPacMan", NearestPillPacMan::new)
+				.addPacMan("RandomNonRevPacMan", RandomNonRevPacMan::new)
+				.addGhosts("StarterGhosts", StarterGhosts::new)
+				.addGhosts("Legacy", Legacy::new)
+				.addGhosts("Legacy2TheReckoning", Legacy2TheReckoning::new)
+				.addGhosts("AggressiveGhosts", AggressiveGhosts::new)
+				.addGhosts("RandomGhosts", RandomGhosts::new)
+				.setArchive(archive);
+
+		long start = System.nanoTime();
+		ScoreMatrix matrix = tournament.run(games, seed, fileName);
+
+		System.out.print(matrix);
+		System.out.println(String.format("%d games per pairing in %.1f s, results in %s", games,
+				(System.nanoTime() - start) / 1e9, fileName));
+	}
+
+	/*
+	 * One game of a pairing; the result is filled in when the game is played.
+	 */
+	private static class Outcome implements Callable<Outcome> {
+		final ParallelExperiment pairing;
+		final int pacMan, ghosts, game;
+		final long seed, secret;
+		final String replayFile;
+		int score, level, time;
+
+		Outcome(ParallelExperiment pairing, int pacMan, int ghosts, int game, long seed, long secret,
+				String replayFile) {
+			this.pairing = pairing;
+			this.pacMan = pacMan;
+			this.ghosts = ghosts;
+			this.game = game;
+			this.seed = seed;
+			this.secret = secret;
+			this.replayFile = replayFile;
+		}
+
+		public Outcome call() throws IOException {
+			Game result = replayFile == null ? pairing.play(seed, secret)
+					: pairing.play(seed, secret, replayFile);
+
+			score = result.getScore();
+			level = result.getCurrentLevel();
+			time = result.getTotalTime();
+
+			return this;
+		}
+	}
+}
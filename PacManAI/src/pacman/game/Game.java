@@ -1,22 +1,24 @@
 package pacman.game;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 import java.util.EnumMap;
-import java.util.Random;
-import java.util.Map.Entry;
 import pacman.game.Constants.DM;
 import pacman.game.Constants.MOVE;
+import pacman.game.internal.EngineRandom;
 import pacman.game.internal.Ghost;
 import pacman.game.internal.Maze;
-import pacman.game.internal.Node;
+import pacman.game.internal.MazeRegistry;
 import pacman.game.internal.PacMan;
-import pacman.game.internal.PathsCache;
+import pacman.game.internal.Zobrist;
 
 import static pacman.game.Constants.*;
 
 /**
  * The implementation of Ms Pac-Man. This class contains the game engine and all methods required to
- * query the state of the game. First, the mazes are loaded once only as they are immutable. The game
+ * query the state of the game. First, the mazes are loaded once only (on demand) as they are immutable. The game
  * then proceeds to initialise all variables using default values. The game class also provides numerous
  * methods to extract the game state as a string (used for replays and for communication via pipes during
  * the competition) and to create copies. Care has been taken to implement the game efficiently to ensure
@@ -36,6 +38,9 @@ import static pacman.game.Constants.*;
  */
 public final class Game
 {
+	private static final MOVE[] MOVES=MOVE.values();
+	private static final GHOST[] GHOSTS=GHOST.values();
+	
 	//pills stored as bitsets for efficient copying
 	private BitSet pills, powerPills;
 	//all the game's variables
@@ -46,29 +51,20 @@ public final class Game
 	private PacMan pacman;
 	private EnumMap<GHOST, Ghost> ghosts;
 
-	//mazes are only loaded once since they don't change over time
-	private static Maze[] mazes=new Maze[NUM_MAZES];;
-	
+	//mazes are only loaded once since they don't change over time: they are loaded on demand by the MazeRegistry
 	private Maze currentMaze;
 	
-	static 
-	{
-		for(int i=0;i<mazes.length;i++)
-			mazes[i]=new Maze(i);
-	}
+	private EngineRandom rnd;
+	private long seed;
+	//derived from the seed and a secret: the random state handed to controllers is mixed with it, see getReadOnlyView()
+	private long salt;
 	
-	public static PathsCache[] caches=new PathsCache[NUM_MAZES];
+	//Zobrist hash of the pills, power pills and maze; the agents are added in stateHash()
+	private long boardHash;
 	
-	static 
-	{
-		for(int i=0;i<mazes.length;i++)
-		{
-			caches[i]=new PathsCache(i);
-		}
-	}
-	
-	private Random rnd;
-	private long seed;	
+	//a read-only game rejects all changes (see getReadOnlyView()); view is the view of this game, once requested
+	private boolean readOnly;
+	private Game view;	
 	
 	/////////////////////////////////////////////////////////////////////////////
 	///////////////////  Constructors and initialisers  /////////////////////////
@@ -76,18 +72,18 @@ public final class Game
 	
 	/**
 	 * Instantiates a new game. The seed is used to initialise the pseudo-random
-	 * number generator. This way, a game may be replicated exactly by using identical
-	 * seeds. Note: in the competition, the games received from the game server are
+	 * number generator, which is the only source of randomness of the game. This way,
+	 * a game may be replicated exactly by using identical seeds and moves. Note: in the competition, the games received from the game server are
 	 * using different seeds. Otherwise global reversal events would be predictable.
+	 * For the same reason, the read-only views and copies handed to controllers carry a random state that is
+	 * derived from, but not equal to, the state of this game (see getReadOnlyView()). The game is salted with
+	 * the secret 0; use Game(long,int,long) to supply a secret controllers cannot know.
 	 *
 	 * @param seed The seed for the pseudo-random number generator
 	 */
 	public Game(long seed)
 	{		
-		this.seed=seed;
-		rnd=new Random(seed);
-		
-		_init(0);
+		this(seed,0,0);
 	}
 	
 	/**
@@ -98,10 +94,36 @@ public final class Game
 	 */
 	public Game(long seed,int initialMaze)
 	{						
+		this(seed,initialMaze,0);
+	}
+	
+	/**
+	 * Initiates a new game specifying the maze to start with and the secret the random state handed to
+	 * controllers is salted with (see getReadOnlyView()). The salt is derived from the seed and the secret only,
+	 * so games with the same seed, secret and moves hand controllers the same states, and experiments stay
+	 * reproducible; experiments derive the secret from their master seed (see ParallelExperiment.secret()).
+	 * 
+	 * @param seed Seed used for the pseudo-random numbers
+	 * @param initialMaze The maze to start the game with
+	 * @param secret The secret the states handed to controllers are salted with
+	 */
+	public Game(long seed,int initialMaze,long secret)
+	{
 		this.seed=seed;
-		rnd=new Random(seed);
+		rnd=new EngineRandom(seed);
+		salt=EngineRandom.initialState(seed^EngineRandom.initialState(secret));
 		
-		_init(initialMaze);		
+		_init(initialMaze);
+	}
+	
+	/**
+	 * Starts loading all mazes and their paths caches in the background. Mazes are otherwise loaded
+	 * the first time they are used, which means a game would stall briefly at the start of the first
+	 * level played on each maze. Calling this more than once has no effect.
+	 */
+	public static void warmUp()
+	{
+		MazeRegistry.warmUp();
 	}
 	
 	/**
@@ -127,10 +149,10 @@ public final class Game
 		
 		ghostsEaten=new EnumMap<GHOST,Boolean>(GHOST.class);
 		
-		for(GHOST ghost : GHOST.values())
+		for(GHOST ghost : GHOSTS)
 			ghostsEaten.put(ghost,false);
 		
-		_setPills(currentMaze=mazes[mazeIndex]);
+		_setPills(currentMaze=MazeRegistry.getMaze(mazeIndex));
 		_initGhosts();
 		
 		pacman=new PacMan(currentMaze.initialPacManNodeIndex,MOVE.LEFT,NUM_LIVES,false);		
@@ -143,7 +165,7 @@ public final class Game
 	{
 		mazeIndex=++mazeIndex%NUM_MAZES;
 		levelCount++;
-		currentMaze=mazes[mazeIndex];
+		currentMaze=MazeRegistry.getMaze(mazeIndex);
 		
 		currentLevelTime=0;
 		ghostEatMultiplier=1;
@@ -172,10 +194,22 @@ public final class Game
 	 */
 	private void _setPills(Maze maze)
 	{
-		pills=new BitSet(currentMaze.pillIndices.length);
+		if(pills==null)
+		{
+			pills=new BitSet(currentMaze.pillIndices.length);
+			powerPills=new BitSet(currentMaze.powerPillIndices.length);
+		}
+		else
+		{
+			pills.clear();
+			powerPills.clear();
+		}
+		
 		pills.set(0,currentMaze.pillIndices.length);
-		powerPills=new BitSet(currentMaze.powerPillIndices.length);
 		powerPills.set(0,currentMaze.powerPillIndices.length);
+		
+		boardHash=Zobrist.key(Zobrist.MAZE,mazeIndex)^Zobrist.keys(Zobrist.PILL,currentMaze.pillIndices.length)
+				^Zobrist.keys(Zobrist.POWER_PILL,currentMaze.powerPillIndices.length);
 	}
 	
 	/**
@@ -183,11 +217,25 @@ public final class Game
 	 */
 	private void _initGhosts()
 	{
-		ghosts=new EnumMap<GHOST, Ghost>(GHOST.class);
+		if(ghosts==null)
+			ghosts=new EnumMap<GHOST, Ghost>(GHOST.class);
 					
-		for(GHOST ghostType : GHOST.values())
-			ghosts.put(ghostType,new Ghost(ghostType,currentMaze.lairNodeIndex,0,
-					(int)(ghostType.initialLairTime*(Math.pow(LAIR_REDUCTION,levelCount%LEVEL_RESET_REDUCTION))),MOVE.NEUTRAL));
+		for(GHOST ghostType : GHOSTS)
+		{
+			int lairTime=(int)(ghostType.initialLairTime*(Math.pow(LAIR_REDUCTION,levelCount%LEVEL_RESET_REDUCTION)));
+			Ghost ghost=ghosts.get(ghostType);
+			
+			//the ghosts are reset in place so that losing a life or a new level does not create garbage
+			if(ghost==null)
+				ghosts.put(ghostType,new Ghost(ghostType,currentMaze.lairNodeIndex,0,lairTime,MOVE.NEUTRAL));
+			else
+			{
+				ghost.currentNodeIndex=currentMaze.lairNodeIndex;
+				ghost.edibleTime=0;
+				ghost.lairTime=lairTime;
+				ghost.lastMoveMade=MOVE.NEUTRAL;
+			}
+		}
 	}
 
 	/**
@@ -228,7 +276,7 @@ public final class Game
 		sb.append(pacmanWasEaten);
 		sb.append(",");	
 		
-		for(GHOST ghost : GHOST.values())
+		for(GHOST ghost : GHOSTS)
 		{
 			sb.append(ghostsEaten.get(ghost));
 			sb.append(",");
@@ -241,6 +289,31 @@ public final class Game
 		return sb.toString();
 	}
 	
+	/**
+	 * Returns a 64-bit Zobrist hash of the state of the game: the positions and last moves of Ms Pac-Man and the
+	 * ghosts, the edible and lair times of the ghosts, the pills and power pills, the maze and the number of lives
+	 * remaining. Equal states have equal hashes, and different states have different hashes with very high
+	 * probability. The score and times are not included. The hash of the pills is updated incrementally as they
+	 * are eaten, so this method takes constant time and does not allocate.
+	 *
+	 * @return The hash of the state
+	 */
+	public long stateHash()
+	{
+		long hash=boardHash^Zobrist.key(Zobrist.PACMAN_NODE,pacman.currentNodeIndex)^Zobrist.key(Zobrist.PACMAN_MOVE,pacman.lastMoveMade.ordinal())
+				^Zobrist.key(Zobrist.LIVES,pacman.numberOfLivesRemaining);
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			hash^=Zobrist.ghostKey(Zobrist.GHOST_NODE,i,ghost.currentNodeIndex)^Zobrist.ghostKey(Zobrist.GHOST_MOVE,i,ghost.lastMoveMade.ordinal())
+					^Zobrist.ghostKey(Zobrist.GHOST_EDIBLE,i,ghost.edibleTime)^Zobrist.ghostKey(Zobrist.GHOST_LAIR,i,ghost.lairTime);
+		}
+		
+		return hash;
+	}
+	
 	/**
 	 * Sets the game state from a string: the inverse of getGameState(). It reconstructs
 	 * all the game's variables from the string.
@@ -249,6 +322,8 @@ public final class Game
 	 */
 	public void setGameState(String gameState)
 	{	
+		_checkWritable();
+		
 		String[] values=gameState.split(",");
 		
 		int index=0;
@@ -264,32 +339,38 @@ public final class Game
 		
 		ghosts=new EnumMap<GHOST, Ghost>(GHOST.class);
 		
-		for(GHOST ghostType : GHOST.values())
+		for(GHOST ghostType : GHOSTS)
 			ghosts.put(ghostType,new Ghost(ghostType,Integer.parseInt(values[index++]),Integer.parseInt(values[index++]),
 					Integer.parseInt(values[index++]),MOVE.valueOf(values[index++])));
 			
-		_setPills(currentMaze=mazes[mazeIndex]);
+		_setPills(currentMaze=MazeRegistry.getMaze(mazeIndex));
 		
 		for(int i=0;i<values[index].length();i++)
 			if(values[index].charAt(i)=='1')
 				pills.set(i);
-			else
+			else if(pills.get(i))
+			{
 				pills.clear(i);
+				boardHash^=Zobrist.key(Zobrist.PILL,i);
+			}
 		
 		index++;
 		
 		for(int i=0;i<values[index].length();i++)
 			if(values[index].charAt(i)=='1')
 				powerPills.set(i);		
-			else
+			else if(powerPills.get(i))
+			{
 				powerPills.clear(i);
+				boardHash^=Zobrist.key(Zobrist.POWER_PILL,i);
+			}
 		
 		timeOfLastGlobalReversal=Integer.parseInt(values[++index]);			
 		pacmanWasEaten=Boolean.parseBoolean(values[++index]);
 		
 		ghostsEaten=new EnumMap<GHOST,Boolean>(GHOST.class);
 		
-		for(GHOST ghost : GHOST.values())
+		for(GHOST ghost : GHOSTS)
 			ghostsEaten.put(ghost,Boolean.parseBoolean(values[++index]));
 		
 		pillWasEaten=Boolean.parseBoolean(values[++index]);
@@ -298,7 +379,9 @@ public final class Game
 	
 	/**
 	 * Returns an exact copy of the game. This may be used for forward searches
-	 * such as minimax. The copying is relatively efficient.
+	 * such as minimax. The copying is relatively efficient. The copy continues the
+	 * random number stream of this game, so given the same moves both games
+	 * play out identically; use fork() for independent rollouts.
 	 *
 	 * @return the game
 	 */
@@ -307,11 +390,13 @@ public final class Game
 		Game copy=new Game();
 			
 		copy.seed=seed;
-		copy.rnd=new Random(seed);
+		copy.rnd=rnd.copy();
+		copy.salt=salt;
 		copy.currentMaze=currentMaze;		
 		copy.pills=(BitSet)pills.clone();
 		copy.powerPills=(BitSet)powerPills.clone();		
 		copy.mazeIndex=mazeIndex;
+		copy.boardHash=boardHash;
 		copy.levelCount=levelCount;
 		copy.currentLevelTime=currentLevelTime;		
 		copy.totalTime=totalTime;
@@ -327,7 +412,7 @@ public final class Game
 		copy.ghostsEaten=new EnumMap<GHOST,Boolean>(GHOST.class);
 		copy.ghosts=new EnumMap<GHOST,Ghost>(GHOST.class);
 		
-		for(GHOST ghostType : GHOST.values())
+		for(GHOST ghostType : GHOSTS)
 		{
 			copy.ghosts.put(ghostType,ghosts.get(ghostType).copy());
 			copy.ghostsEaten.put(ghostType,ghostsEaten.get(ghostType));
@@ -335,6 +420,685 @@ public final class Game
 			
 		return copy;	
 	}
+	
+	/**
+	 * Returns a copy of the game with its own random number stream, split off the
+	 * stream of this game. Rollouts run on forks (e.g., in parallel) see different
+	 * random events from each other and from this game, yet forking is
+	 * deterministic: it advances the stream of this game, so forking a game that
+	 * was replayed exactly yields the same forks again. A read-only game must not
+	 * change, so its forks are split off a copy of its stream instead: forking it
+	 * twice yields the same random events.
+	 *
+	 * @return the fork
+	 */
+	public Game fork()
+	{
+		Game fork=copy();
+		fork.rnd=(readOnly ? rnd.copy() : rnd).split();
+		
+		return fork;
+	}
+	
+	/**
+	 * Returns a read-only view of the current state of this game, for controllers that only read the state: it
+	 * answers all queries like this game, but all methods that would change it throw an
+	 * UnsupportedOperationException. copy() (or GamePool.copyOf()) of the view returns an ordinary game to
+	 * simulate on. The view shares the state of this game instead of copying it, so it is cheap, and the same view
+	 * is returned (and brought up to date) every time. It must therefore only be used while this game does not
+	 * change, e.g., by controllers that are called synchronously; use getReadOnlyCopy() to hand a state to
+	 * another thread.
+	 * 
+	 * Unlike copy(), the view does not continue the random number stream of this game: its seed and random
+	 * state are mixed with a salt derived from the seed and secret of this game (see Game(long,int,long)), so a
+	 * controller that does not know the secret cannot predict the global reversals and random ghost moves to
+	 * come by simulating them, nor by replaying the game from its seed. The salted stream is still a function
+	 * of the seed, the secret and the moves, so controllers that simulate on the view remain reproducible.
+	 *
+	 * @return The view
+	 */
+	public Game getReadOnlyView()
+	{
+		if(readOnly)
+			return this;
+		
+		//the view has a generator of its own, so that nothing done to the view can advance the stream of this game
+		if(view==null)
+		{
+			view=new Game();
+			view.readOnly=true;
+			view.rnd=rnd.copy();
+		}
+		
+		view.salt=salt;
+		view.seed=_salted(seed);
+		view.rnd.setState(_salted(rnd.getState()));
+		view.boardHash=boardHash;
+		view.currentMaze=currentMaze;
+		view.pills=pills;
+		view.powerPills=powerPills;
+		view.mazeIndex=mazeIndex;
+		view.levelCount=levelCount;
+		view.currentLevelTime=currentLevelTime;
+		view.totalTime=totalTime;
+		view.score=score;
+		view.ghostEatMultiplier=ghostEatMultiplier;
+		view.gameOver=gameOver;
+		view.timeOfLastGlobalReversal=timeOfLastGlobalReversal;
+		view.pacmanWasEaten=pacmanWasEaten;
+		view.pillWasEaten=pillWasEaten;
+		view.powerPillWasEaten=powerPillWasEaten;
+		view.ghostsEaten=ghostsEaten;
+		view.pacman=pacman;
+		view.ghosts=ghosts;
+		
+		return view;
+	}
+	
+	/**
+	 * Returns a read-only copy of this game: unlike the view, it does not change when this game does, so it
+	 * may be handed to controllers running on other threads, and since nobody can change it, one copy can be
+	 * shared by both controllers. Like the view, it carries a salted seed and random state.
+	 *
+	 * @return The read-only copy
+	 */
+	public Game getReadOnlyCopy()
+	{
+		Game copy=copy();
+		copy.readOnly=true;
+		copy.seed=_salted(seed);
+		copy.rnd.setState(_salted(copy.rnd.getState()));
+		
+		return copy;
+	}
+	
+	/**
+	 * Returns whether this game is a read-only view or copy.
+	 *
+	 * @return true if the game cannot be changed
+	 */
+	public boolean isReadOnly()
+	{
+		return readOnly;
+	}
+	
+	//mixes a seed or random state with the salt; the mix cannot be undone without the salt, so salting twice
+	//(e.g., the view of a copy of a view) does not restore the original
+	private long _salted(long value)
+	{
+		return EngineRandom.initialState(value^salt);
+	}
+	
+	private void _checkWritable()
+	{
+		if(readOnly)
+			throw new UnsupportedOperationException("The game is read-only: use copy() to obtain a game that can be advanced");
+	}
+	
+	/**
+	 * Overwrites the game supplied with a copy of this game. The result is the same as that of copy() but
+	 * the objects of the target (pills, characters, random number generator) are reused, so no garbage is
+	 * created once the target has been used for a game of the same maze. Search algorithms can use this
+	 * together with GamePool to avoid creating a new game for every node of the search tree.
+	 *
+	 * @param target The game to be overwritten
+	 */
+	public void copyInto(Game target)
+	{
+		if(target==this)
+			return;
+		
+		target._checkWritable();
+		
+		target.seed=seed;
+		target.salt=salt;
+		
+		if(target.rnd==null)
+			target.rnd=rnd.copy();
+		else
+			target.rnd.setState(rnd.getState());
+		
+		target.currentMaze=currentMaze;
+		target.pills=_copyBits(pills,target.pills);
+		target.powerPills=_copyBits(powerPills,target.powerPills);
+		target.mazeIndex=mazeIndex;
+		target.boardHash=boardHash;
+		target.levelCount=levelCount;
+		target.currentLevelTime=currentLevelTime;
+		target.totalTime=totalTime;
+		target.score=score;
+		target.ghostEatMultiplier=ghostEatMultiplier;
+		target.gameOver=gameOver;
+		target.timeOfLastGlobalReversal=timeOfLastGlobalReversal;
+		target.pacmanWasEaten=pacmanWasEaten;
+		target.pillWasEaten=pillWasEaten;
+		target.powerPillWasEaten=powerPillWasEaten;
+		
+		if(target.pacman==null)
+			target.pacman=pacman.copy();
+		else
+			pacman.copyInto(target.pacman);
+		
+		if(target.ghosts==null)
+		{
+			target.ghostsEaten=new EnumMap<GHOST,Boolean>(GHOST.class);
+			target.ghosts=new EnumMap<GHOST,Ghost>(GHOST.class);
+		}
+		
+		for(GHOST ghostType : GHOSTS)
+		{
+			Ghost ghost=target.ghosts.get(ghostType);
+			
+			if(ghost==null)
+				target.ghosts.put(ghostType,ghosts.get(ghostType).copy());
+			else
+				ghosts.get(ghostType).copyInto(ghost);
+			
+			target.ghostsEaten.put(ghostType,ghostsEaten.get(ghostType));
+		}
+	}
+	
+	/**
+	 * Overwrites a game of the batch supplied with the state of this game (see GameBatch.set()).
+	 *
+	 * @param batch The batch
+	 * @param index The index of the game in the batch
+	 */
+	void copyInto(GameBatch batch,int index)
+	{
+		batch.mazeIndex[index]=mazeIndex;
+		batch.levelCount[index]=levelCount;
+		batch.currentLevelTime[index]=currentLevelTime;
+		batch.totalTime[index]=totalTime;
+		batch.score[index]=score;
+		batch.ghostEatMultiplier[index]=ghostEatMultiplier;
+		batch.timeOfLastGlobalReversal[index]=timeOfLastGlobalReversal;
+		batch.gameOver[index]=gameOver;
+		batch.pacmanWasEaten[index]=pacmanWasEaten;
+		batch.pillWasEaten[index]=pillWasEaten;
+		batch.powerPillWasEaten[index]=powerPillWasEaten;
+		
+		batch.pacmanNode[index]=pacman.currentNodeIndex;
+		batch.pacmanMove[index]=pacman.lastMoveMade.ordinal();
+		batch.pacmanLives[index]=pacman.numberOfLivesRemaining;
+		batch.pacmanExtraLife[index]=pacman.hasReceivedExtraLife;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			int g=index*NUM_GHOSTS+i;
+			
+			batch.ghostNode[g]=ghost.currentNodeIndex;
+			batch.ghostMove[g]=ghost.lastMoveMade.ordinal();
+			batch.ghostEdibleTime[g]=ghost.edibleTime;
+			batch.ghostLairTime[g]=ghost.lairTime;
+			batch.ghostsEaten[g]=ghostsEaten.get(GHOSTS[i]);
+		}
+		
+		long[] words=pills.toLongArray();
+		
+		for(int w=0;w<batch.pillWords;w++)
+			batch.pills[index*batch.pillWords+w]=w<words.length ? words[w] : 0;
+		
+		words=powerPills.toLongArray();
+		batch.powerPills[index]=words.length>0 ? words[0] : 0;
+		batch.pillsLeft[index]=pills.cardinality();
+		batch.powerPillsLeft[index]=powerPills.cardinality();
+		batch.randomStates[index]=rnd.getState();
+	}
+	
+	/**
+	 * The number of values getState() stores: the values of getGameState() except for the pills, in the same
+	 * order, with moves as ordinals and flags as 0 or 1.
+	 */
+	static final int STATE_VALUES=9+4*NUM_GHOSTS+2+NUM_GHOSTS+2;
+	
+	/**
+	 * Stores the state of the game as given by getGameState() in the arrays supplied, without creating any
+	 * strings: the counterpart of setState().
+	 *
+	 * @param values The array of (at least) STATE_VALUES values to store the state in
+	 * @param pills The set to store the available pills in
+	 * @param powerPills The set to store the available power pills in
+	 */
+	void getState(int[] values,BitSet pills,BitSet powerPills)
+	{
+		int index=0;
+		
+		values[index++]=mazeIndex;
+		values[index++]=totalTime;
+		values[index++]=score;
+		values[index++]=currentLevelTime;
+		values[index++]=levelCount;
+		values[index++]=pacman.currentNodeIndex;
+		values[index++]=pacman.lastMoveMade.ordinal();
+		values[index++]=pacman.numberOfLivesRemaining;
+		values[index++]=pacman.hasReceivedExtraLife ? 1 : 0;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			values[index++]=ghost.currentNodeIndex;
+			values[index++]=ghost.edibleTime;
+			values[index++]=ghost.lairTime;
+			values[index++]=ghost.lastMoveMade.ordinal();
+		}
+		
+		values[index++]=timeOfLastGlobalReversal;
+		values[index++]=pacmanWasEaten ? 1 : 0;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+			values[index++]=ghostsEaten.get(GHOSTS[i]) ? 1 : 0;
+		
+		values[index++]=pillWasEaten ? 1 : 0;
+		values[index++]=powerPillWasEaten ? 1 : 0;
+		
+		_copyBits(this.pills,pills);
+		_copyBits(this.powerPills,powerPills);
+	}
+	
+	/**
+	 * Sets the state of the game from the values stored by getState(), like setGameState() does from a string.
+	 *
+	 * @param values The STATE_VALUES values of the state
+	 * @param pills The available pills
+	 * @param powerPills The available power pills
+	 */
+	void setState(int[] values,BitSet pills,BitSet powerPills)
+	{
+		_checkWritable();
+		
+		int index=0;
+		
+		mazeIndex=values[index++];
+		totalTime=values[index++];
+		score=values[index++];
+		currentLevelTime=values[index++];
+		levelCount=values[index++];
+		pacman.currentNodeIndex=values[index++];
+		pacman.lastMoveMade=MOVES[values[index++]];
+		pacman.numberOfLivesRemaining=values[index++];
+		pacman.hasReceivedExtraLife=values[index++]!=0;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			ghost.currentNodeIndex=values[index++];
+			ghost.edibleTime=values[index++];
+			ghost.lairTime=values[index++];
+			ghost.lastMoveMade=MOVES[values[index++]];
+		}
+		
+		timeOfLastGlobalReversal=values[index++];
+		pacmanWasEaten=values[index++]!=0;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+			ghostsEaten.put(GHOSTS[i],values[index++]!=0);
+		
+		pillWasEaten=values[index++]!=0;
+		powerPillWasEaten=values[index++]!=0;
+		
+		currentMaze=MazeRegistry.getMaze(mazeIndex);
+		
+		_copyBits(pills,this.pills);
+		_copyBits(powerPills,this.powerPills);
+		
+		boardHash=Zobrist.key(Zobrist.MAZE,mazeIndex);
+		
+		for(int i=pills.nextSetBit(0);i>=0;i=pills.nextSetBit(i+1))
+			boardHash^=Zobrist.key(Zobrist.PILL,i);
+		
+		for(int i=powerPills.nextSetBit(0);i>=0;i=powerPills.nextSetBit(i+1))
+			boardHash^=Zobrist.key(Zobrist.POWER_PILL,i);
+	}
+	
+	/**
+	 * The version of the layout written by writeTo(); readFrom() rejects any other.
+	 */
+	public static final int SERIAL_VERSION=1;
+	
+	//the number of 64-bit words the pills and power pills are written as: room for 256 pills and 64 power pills
+	private static final int PILL_WORDS=4, POWER_PILL_WORDS=1;
+	//the offsets of the maze index, of Ms Pac-Man's node and of the first ghost's node, and the size of a ghost
+	private static final int MAZE_OFFSET=1+8+8, PACMAN_OFFSET=MAZE_OFFSET+7*4, GHOSTS_OFFSET=PACMAN_OFFSET+4+1+1+1, GHOST_SIZE=4+4+4+1;
+	
+	/**
+	 * The number of bytes writeTo() writes, whatever the state of the game.
+	 */
+	public static final int SERIAL_SIZE=1+8+8+7*4+(4+1+1+1)+NUM_GHOSTS*(4+4+4+1)+1+8*(PILL_WORDS+POWER_PILL_WORDS);
+	
+	/**
+	 * Writes the complete state of the game to a buffer in a fixed binary layout of SERIAL_SIZE bytes, which
+	 * readFrom() reads back: unlike getGameState(), this includes the state of the random number generator, so
+	 * a game read back plays out exactly like this one. Nothing is allocated, so games can be checkpointed or
+	 * sent between processes at the speed of the buffer.
+	 * 
+	 * Layout (in the byte order of the buffer): SERIAL_VERSION (byte); the seed and the state of the random
+	 * number generator (longs); the maze index, total time, score, current level time, level count, ghost eat
+	 * multiplier and time of the last global reversal (ints); the node (int), last move, lives and extra life
+	 * flag (bytes) of Ms Pac-Man; the node, edible time, lair time (ints) and last move (byte) of each ghost; a
+	 * byte of flags (game over, Ms Pac-Man eaten, pill eaten, power pill eaten, then each ghost eaten); and the
+	 * pills and power pills as 4 and 1 longs, bit i standing for pill i.
+	 *
+	 * @param buffer The buffer, with at least SERIAL_SIZE bytes remaining
+	 * @throws BufferOverflowException If the buffer is too small
+	 */
+	public void writeTo(ByteBuffer buffer)
+	{
+		if(buffer.remaining()<SERIAL_SIZE)
+			throw new BufferOverflowException();
+		
+		buffer.put((byte)SERIAL_VERSION);
+		buffer.putLong(seed);
+		buffer.putLong(rnd.getState());
+		buffer.putInt(mazeIndex);
+		buffer.putInt(totalTime);
+		buffer.putInt(score);
+		buffer.putInt(currentLevelTime);
+		buffer.putInt(levelCount);
+		buffer.putInt(ghostEatMultiplier);
+		buffer.putInt(timeOfLastGlobalReversal);
+		buffer.putInt(pacman.currentNodeIndex);
+		buffer.put((byte)pacman.lastMoveMade.ordinal());
+		buffer.put((byte)pacman.numberOfLivesRemaining);
+		buffer.put((byte)(pacman.hasReceivedExtraLife ? 1 : 0));
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			buffer.putInt(ghost.currentNodeIndex);
+			buffer.putInt(ghost.edibleTime);
+			buffer.putInt(ghost.lairTime);
+			buffer.put((byte)ghost.lastMoveMade.ordinal());
+		}
+		
+		int flags=(gameOver ? 1 : 0)|(pacmanWasEaten ? 2 : 0)|(pillWasEaten ? 4 : 0)|(powerPillWasEaten ? 8 : 0);
+		
+		for(int i=0;i<GHOSTS.length;i++)
+			if(ghostsEaten.get(GHOSTS[i]))
+				flags|=16<<i;
+		
+		buffer.put((byte)flags);
+		
+		_putWords(buffer,pills,PILL_WORDS);
+		_putWords(buffer,powerPills,POWER_PILL_WORDS);
+	}
+	
+	/**
+	 * Sets the game to a state written by writeTo(), reusing the objects of this game, so nothing is allocated
+	 * (other than when a maze is used for the first time).
+	 *
+	 * @param buffer The buffer, positioned at the state
+	 * @throws IllegalArgumentException If the state was written with another SERIAL_VERSION, or its maze, nodes
+	 *             or moves are out of range; the game and the position of the buffer are then left unchanged
+	 * @throws BufferUnderflowException If the buffer is too short
+	 */
+	public void readFrom(ByteBuffer buffer)
+	{
+		_checkWritable();
+		
+		if(buffer.remaining()<SERIAL_SIZE)
+			throw new BufferUnderflowException();
+		
+		//everything that could fail is checked before the game is changed, so a corrupt state leaves it intact
+		int start=buffer.position();
+		int version=buffer.get(start);
+		
+		if(version!=SERIAL_VERSION)
+			throw new IllegalArgumentException("Unsupported version of the game state: "+version);
+		
+		int maze=buffer.getInt(start+MAZE_OFFSET);
+		
+		if(maze<0 || maze>=NUM_MAZES)
+			throw new IllegalArgumentException("Invalid maze in the game state: "+maze);
+		
+		int numNodes=MazeRegistry.getMaze(maze).graph.length;
+		
+		_checkSerialAgent(buffer,start+PACMAN_OFFSET,start+PACMAN_OFFSET+4,numNodes);
+		
+		for(int i=0;i<GHOSTS.length;i++)
+			_checkSerialAgent(buffer,start+GHOSTS_OFFSET+i*GHOST_SIZE,start+GHOSTS_OFFSET+(i+1)*GHOST_SIZE-1,numNodes);
+		
+		buffer.get();	//the version
+		boardHash^=Zobrist.key(Zobrist.MAZE,mazeIndex);
+		seed=buffer.getLong();
+		rnd.setState(buffer.getLong());
+		mazeIndex=buffer.getInt();
+		totalTime=buffer.getInt();
+		score=buffer.getInt();
+		currentLevelTime=buffer.getInt();
+		levelCount=buffer.getInt();
+		ghostEatMultiplier=buffer.getInt();
+		timeOfLastGlobalReversal=buffer.getInt();
+		pacman.currentNodeIndex=buffer.getInt();
+		pacman.lastMoveMade=MOVES[buffer.get()];
+		pacman.numberOfLivesRemaining=buffer.get();
+		pacman.hasReceivedExtraLife=buffer.get()!=0;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			ghost.currentNodeIndex=buffer.getInt();
+			ghost.edibleTime=buffer.getInt();
+			ghost.lairTime=buffer.getInt();
+			ghost.lastMoveMade=MOVES[buffer.get()];
+		}
+		
+		int flags=buffer.get();
+		
+		gameOver=(flags&1)!=0;
+		pacmanWasEaten=(flags&2)!=0;
+		pillWasEaten=(flags&4)!=0;
+		powerPillWasEaten=(flags&8)!=0;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+			ghostsEaten.put(GHOSTS[i],(flags&(16<<i))!=0);
+		
+		currentMaze=MazeRegistry.getMaze(mazeIndex);
+		boardHash^=Zobrist.key(Zobrist.MAZE,mazeIndex);
+		boardHash^=_getWords(buffer,pills,PILL_WORDS,Zobrist.PILL);
+		boardHash^=_getWords(buffer,powerPills,POWER_PILL_WORDS,Zobrist.POWER_PILL);
+	}
+	
+	//checks the node (an int) and last move (a byte) of Ms Pac-Man or a ghost at the offsets supplied
+	private static void _checkSerialAgent(ByteBuffer buffer,int nodeOffset,int moveOffset,int numNodes)
+	{
+		int node=buffer.getInt(nodeOffset);
+		int move=buffer.get(moveOffset);
+		
+		if(node<0 || node>=numNodes)
+			throw new IllegalArgumentException("Invalid node in the game state: "+node);
+		
+		if(move<0 || move>=MOVES.length)
+			throw new IllegalArgumentException("Invalid move in the game state: "+move);
+	}
+	
+	//writes the bits of a set as the number of words supplied, without the allocation of BitSet.toLongArray()
+	private static void _putWords(ByteBuffer buffer,BitSet bits,int words)
+	{
+		for(int w=0;w<words;w++)
+			buffer.putLong(_getWord(bits,w));
+		
+		if(bits.nextSetBit(64*words)>=0)
+			throw new IllegalStateException("Too many pills to write: "+bits.length());
+	}
+	
+	/*
+	 * Sets the bits of a set to those written by _putWords() and returns the exclusive or of the Zobrist keys of
+	 * the bits that changed, so the hash of the board only needs updating where the states differ.
+	 */
+	private static long _getWords(ByteBuffer buffer,BitSet bits,int words,int kind)
+	{
+		long hash=0;
+		
+		for(int w=0;w<words;w++)
+		{
+			long word=buffer.getLong();
+			
+			for(long changed=word^_getWord(bits,w);changed!=0;changed&=changed-1)
+				hash^=Zobrist.key(kind,64*w+Long.numberOfTrailingZeros(changed));
+			
+			bits.clear(64*w,64*w+64);
+			
+			//set the runs of ones of the word at once
+			while(word!=0)
+			{
+				int from=Long.numberOfTrailingZeros(word), to=from+Long.numberOfTrailingZeros(~(word>>>from));
+				
+				bits.set(64*w+from,64*w+to);
+				word=to==64 ? 0 : word&(-1L<<to);
+			}
+		}
+		
+		return hash;
+	}
+	
+	//returns word w of a set, run by run (pills are mostly eaten in runs, so there are few)
+	private static long _getWord(BitSet bits,int w)
+	{
+		long word=0;
+		int end=64*w+64;
+		
+		for(int i=bits.nextSetBit(64*w);i>=0 && i<end;)
+		{
+			int j=Math.min(bits.nextClearBit(i),end);
+			
+			word|=(j==end ? -1L : (1L<<(j-64*w))-1)&(-1L<<(i-64*w));
+			i=bits.nextSetBit(j);
+		}
+		
+		return word;
+	}
+	
+	/**
+	 * Saves the state of the game in the record supplied so that it can be restored using unmakeMove(). It is
+	 * only required if the game is advanced using a method other than makeMove().
+	 *
+	 * @param undo The record to save the state in
+	 */
+	public void saveState(UndoRecord undo)
+	{
+		undo.mazeIndex=mazeIndex;
+		undo.boardHash=boardHash;
+		undo.levelCount=levelCount;
+		undo.currentLevelTime=currentLevelTime;
+		undo.totalTime=totalTime;
+		undo.score=score;
+		undo.ghostEatMultiplier=ghostEatMultiplier;
+		undo.timeOfLastGlobalReversal=timeOfLastGlobalReversal;
+		undo.gameOver=gameOver;
+		undo.pacmanWasEaten=pacmanWasEaten;
+		undo.pillWasEaten=pillWasEaten;
+		undo.powerPillWasEaten=powerPillWasEaten;
+		
+		undo.pacmanNodeIndex=pacman.currentNodeIndex;
+		undo.pacmanLastMoveMade=pacman.lastMoveMade;
+		undo.pacmanNumberOfLivesRemaining=pacman.numberOfLivesRemaining;
+		undo.pacmanHasReceivedExtraLife=pacman.hasReceivedExtraLife;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			undo.ghostNodeIndices[i]=ghost.currentNodeIndex;
+			undo.ghostEdibleTimes[i]=ghost.edibleTime;
+			undo.ghostLairTimes[i]=ghost.lairTime;
+			undo.ghostLastMovesMade[i]=ghost.lastMoveMade;
+			undo.ghostsEaten[i]=ghostsEaten.get(GHOSTS[i]);
+		}
+		
+		_copyBits(pills,undo.pills);
+		_copyBits(powerPills,undo.powerPills);
+		
+		undo.randomState=rnd.getState();
+		undo.saved=true;
+	}
+	
+	/**
+	 * Advances the game like advanceGame() after saving the current state in the record supplied. The step
+	 * can then be undone exactly using unmakeMove(). This allows a search to explore a tree of moves using a
+	 * single game and one record per level of the tree.
+	 *
+	 * @param pacManMove The move supplied by the Ms Pac-Man controller
+	 * @param ghostMoves The moves supplied by the ghosts controller
+	 * @param undo The record to save the state in
+	 */
+	public void makeMove(MOVE pacManMove,EnumMap<GHOST,MOVE> ghostMoves,UndoRecord undo)
+	{
+		_checkWritable();
+		
+		saveState(undo);
+		advanceGame(pacManMove,ghostMoves);
+	}
+	
+	/**
+	 * Restores the state saved by makeMove() or saveState(). The moves of the ghosts (which the game updates
+	 * in the map supplied to advanceGame) are not restored.
+	 *
+	 * @param undo The record the state was saved in
+	 */
+	public void unmakeMove(UndoRecord undo)
+	{
+		_checkWritable();
+		
+		if(!undo.saved)
+			throw new IllegalStateException("The undo record does not hold a saved state");
+		
+		if(mazeIndex!=undo.mazeIndex)
+			currentMaze=MazeRegistry.getMaze(undo.mazeIndex);
+		
+		mazeIndex=undo.mazeIndex;
+		boardHash=undo.boardHash;
+		levelCount=undo.levelCount;
+		currentLevelTime=undo.currentLevelTime;
+		totalTime=undo.totalTime;
+		score=undo.score;
+		ghostEatMultiplier=undo.ghostEatMultiplier;
+		timeOfLastGlobalReversal=undo.timeOfLastGlobalReversal;
+		gameOver=undo.gameOver;
+		pacmanWasEaten=undo.pacmanWasEaten;
+		pillWasEaten=undo.pillWasEaten;
+		powerPillWasEaten=undo.powerPillWasEaten;
+		
+		pacman.currentNodeIndex=undo.pacmanNodeIndex;
+		pacman.lastMoveMade=undo.pacmanLastMoveMade;
+		pacman.numberOfLivesRemaining=undo.pacmanNumberOfLivesRemaining;
+		pacman.hasReceivedExtraLife=undo.pacmanHasReceivedExtraLife;
+		
+		for(int i=0;i<GHOSTS.length;i++)
+		{
+			Ghost ghost=ghosts.get(GHOSTS[i]);
+			
+			ghost.currentNodeIndex=undo.ghostNodeIndices[i];
+			ghost.edibleTime=undo.ghostEdibleTimes[i];
+			ghost.lairTime=undo.ghostLairTimes[i];
+			ghost.lastMoveMade=undo.ghostLastMovesMade[i];
+			ghostsEaten.put(GHOSTS[i],undo.ghostsEaten[i]);
+		}
+		
+		_copyBits(undo.pills,pills);
+		_copyBits(undo.powerPills,powerPills);
+		
+		rnd.setState(undo.randomState);
+	}
+	
+	/**
+	 * Copies the bits of source into target, reusing target if there is one.
+	 */
+	private static BitSet _copyBits(BitSet source,BitSet target)
+	{
+		if(target==null)
+			return (BitSet)source.clone();
+		
+		target.clear();
+		target.or(source);
+		
+		return target;
+	}
 
 	/////////////////////////////////////////////////////////////////////////////
 	///////////////////////////  Game-engine   //////////////////////////////////
@@ -350,6 +1114,8 @@ public final class Game
 	 */	
 	public void advanceGame(MOVE pacManMove,EnumMap<GHOST,MOVE> ghostMoves)
 	{		
+		_checkWritable();
+		
 		updatePacMan(pacManMove);
 		updateGhosts(ghostMoves);	
 		updateGame();
@@ -357,6 +1123,8 @@ public final class Game
 	
 	public void advanceGameWithoutReverse(MOVE pacManMove,EnumMap<GHOST,MOVE> ghostMoves)
 	{		
+		_checkWritable();
+		
 		updatePacMan(pacManMove);
 		updateGhostsWithoutReverse(ghostMoves);
 		updateGame();
@@ -364,6 +1132,8 @@ public final class Game
 	
 	public void advanceGameWithForcedReverse(MOVE pacManMove,EnumMap<GHOST,MOVE> ghostMoves)
 	{		
+		_checkWritable();
+		
 		updatePacMan(pacManMove);
 		updateGhostsWithForcedReverse(ghostMoves);
 		updateGame();
@@ -371,6 +1141,8 @@ public final class Game
 	
 	public void advanceGameWithPowerPillReverseOnly(MOVE pacManMove,EnumMap<GHOST,MOVE> ghostMoves)
 	{		
+		_checkWritable();
+		
 		updatePacMan(pacManMove);
 		
 		if(powerPillWasEaten)
@@ -388,6 +1160,8 @@ public final class Game
 	 */
 	public void updatePacMan(MOVE pacManMove)
 	{
+		_checkWritable();
+		
 		_updatePacMan(pacManMove);					//move pac-man		
 		_eatPill();									//eat a pill
 		_eatPowerPill();							//eat a power pill
@@ -400,6 +1174,8 @@ public final class Game
 	 */
 	public void updateGhosts(EnumMap<GHOST,MOVE> ghostMoves)
 	{
+		_checkWritable();
+		
 		ghostMoves=_completeGhostMoves(ghostMoves);
 		
 		if(!_reverseGhosts(ghostMoves,false))
@@ -408,12 +1184,16 @@ public final class Game
 	
 	public void updateGhostsWithoutReverse(EnumMap<GHOST,MOVE> ghostMoves)
 	{
+		_checkWritable();
+		
 		ghostMoves=_completeGhostMoves(ghostMoves);
 		_updateGhosts(ghostMoves);
 	}
 	
 	public void updateGhostsWithForcedReverse(EnumMap<GHOST,MOVE> ghostMoves)
 	{
+		_checkWritable();
+		
 		ghostMoves=_completeGhostMoves(ghostMoves);
 		_reverseGhosts(ghostMoves,true);
 	}
@@ -425,6 +1205,8 @@ public final class Game
 	 */
 	public void updateGame()
 	{
+		_checkWritable();
+		
 		_feast();									//ghosts eat pac-man or vice versa		
 		_updateLairTimes();
 		_updatePacManExtraLife();
@@ -447,6 +1229,8 @@ public final class Game
 	 */
 	public void updateGame(boolean feast,boolean updateLairTimes,boolean updateExtraLife,boolean updateTotalTime,boolean updateLevelTime)
 	{						
+		_checkWritable();
+		
 		if(feast) 			_feast();				//ghosts eat pac-man or vice versa		
 		if(updateLairTimes) _updateLairTimes();
 		if(updateExtraLife) _updatePacManExtraLife();
@@ -462,10 +1246,14 @@ public final class Game
 	 */
 	private void _updateLairTimes()
 	{
-		for(Ghost ghost : ghosts.values())
+		for(GHOST ghostType : GHOSTS)
+		{
+			Ghost ghost=ghosts.get(ghostType);
+			
 			if(ghost.lairTime>0)
 				if(--ghost.lairTime==0)
 					ghost.currentNodeIndex=currentMaze.initialGhostNodeIndex;
+		}
 	}
 	
 	/**
@@ -489,7 +1277,7 @@ public final class Game
 	{
 		pacman.lastMoveMade=_correctPacManDir(move);		
 		pacman.currentNodeIndex=pacman.lastMoveMade == MOVE.NEUTRAL ? pacman.currentNodeIndex : 
-			currentMaze.graph[pacman.currentNodeIndex].neighbourhood.get(pacman.lastMoveMade);
+			currentMaze.neighbours[pacman.currentNodeIndex*Maze.NUM_DIRECTIONS+pacman.lastMoveMade.ordinal()];
 	}
 
 	/**
@@ -500,15 +1288,15 @@ public final class Game
 	 */
 	private MOVE _correctPacManDir(MOVE direction)
 	{
-		Node node=currentMaze.graph[pacman.currentNodeIndex];
+		int node=pacman.currentNodeIndex;
 		
 		//direction is correct, return it
-		if(node.neighbourhood.containsKey(direction))
+		if(currentMaze.getNeighbour(node,direction)!=-1)
 			return direction;
 		else
 		{
 			//try to use previous direction (i.e., continue in the same direction)
-			if(node.neighbourhood.containsKey(pacman.lastMoveMade))
+			if(currentMaze.getNeighbour(node,pacman.lastMoveMade)!=-1)
 				return pacman.lastMoveMade;
 			//else stay put
 			else
@@ -523,17 +1311,20 @@ public final class Game
 	 */
 	private void _updateGhosts(EnumMap<GHOST,MOVE> moves)
 	{
-		for(Entry<GHOST,MOVE> entry : moves.entrySet())
+		for(GHOST ghostType : GHOSTS)
 		{
-			Ghost ghost=ghosts.get(entry.getKey());
+			if(!moves.containsKey(ghostType))
+				continue;
+			
+			Ghost ghost=ghosts.get(ghostType);
 
 			if(ghost.lairTime==0)
 			{
 				if(ghost.edibleTime==0 || ghost.edibleTime%GHOST_SPEED_REDUCTION!=0)
 				{
-					ghost.lastMoveMade=_checkGhostDir(ghost,entry.getValue());					
-					moves.put(entry.getKey(), ghost.lastMoveMade);					
-					ghost.currentNodeIndex=currentMaze.graph[ghost.currentNodeIndex].neighbourhood.get(ghost.lastMoveMade);
+					ghost.lastMoveMade=_checkGhostDir(ghost,moves.get(ghostType));					
+					moves.put(ghostType, ghost.lastMoveMade);					
+					ghost.currentNodeIndex=currentMaze.neighbours[ghost.currentNodeIndex*Maze.NUM_DIRECTIONS+ghost.lastMoveMade.ordinal()];
 				}
 			}
 		}
@@ -545,12 +1336,12 @@ public final class Game
 		{
 			moves=new EnumMap<GHOST,MOVE>(GHOST.class);
 			
-			for(GHOST ghostType : GHOST.values())
+			for(GHOST ghostType : GHOSTS)
 				moves.put(ghostType,ghosts.get(ghostType).lastMoveMade);
 		}
 		
 		if(moves.size()<NUM_GHOSTS)
-			for(GHOST ghostType : GHOST.values())
+			for(GHOST ghostType : GHOSTS)
 				if(!moves.containsKey(ghostType))
 					moves.put(ghostType,MOVE.NEUTRAL);
 		
@@ -567,18 +1358,18 @@ public final class Game
 	private MOVE _checkGhostDir(Ghost ghost,MOVE direction)
 	{
 		//Gets the neighbours of the node with the node that would correspond to reverse removed
-		Node node=currentMaze.graph[ghost.currentNodeIndex];
+		int node=ghost.currentNodeIndex;
 		
 		//The direction is possible and not opposite to the previous direction of that ghost
-		if(node.neighbourhood.containsKey(direction) && direction!=ghost.lastMoveMade.opposite())
+		if(currentMaze.getNeighbour(node,direction)!=-1 && direction!=ghost.lastMoveMade.opposite())
 			return direction;
 		else
 		{
-			if(node.neighbourhood.containsKey(ghost.lastMoveMade))
+			if(currentMaze.getNeighbour(node,ghost.lastMoveMade)!=-1)
 				return ghost.lastMoveMade;
 			else
 			{
-				MOVE[] moves=node.allPossibleMoves.get(ghost.lastMoveMade);
+				MOVE[] moves=currentMaze.graph[node].allPossibleMoves.get(ghost.lastMoveMade);
 				return moves[rnd.nextInt(moves.length)];				
 			}
 		}
@@ -597,6 +1388,7 @@ public final class Game
 		{
 			score+=PILL;
 			pills.clear(pillIndex);
+			boardHash^=Zobrist.key(Zobrist.PILL,pillIndex);
 			pillWasEaten=true;
 		}
 	}
@@ -615,14 +1407,19 @@ public final class Game
 			score+=POWER_PILL;
 			ghostEatMultiplier=1;
 			powerPills.clear(powerPillIndex);
+			boardHash^=Zobrist.key(Zobrist.POWER_PILL,powerPillIndex);
 			
 			int newEdibleTime=(int)(EDIBLE_TIME*(Math.pow(EDIBLE_TIME_REDUCTION,levelCount%LEVEL_RESET_REDUCTION)));
 			
-			for(Ghost ghost : ghosts.values())
+			for(GHOST ghostType : GHOSTS)
+			{
+				Ghost ghost=ghosts.get(ghostType);
+				
 				if(ghost.lairTime==0)
 					ghost.edibleTime=newEdibleTime;
 				else
 					ghost.edibleTime=0;
+			}
 			
 			powerPillWasEaten=true;
 		}
@@ -633,19 +1430,22 @@ public final class Game
 		boolean reversed=false;		
 		boolean globalReverse=false;
 			
-		if(Math.random()<GHOST_REVERSAL)
+		if(rnd.nextDouble()<GHOST_REVERSAL)
 			globalReverse=true;
 		
-		for(Entry<GHOST,MOVE> entry : moves.entrySet())
+		for(GHOST ghostType : GHOSTS)
 		{
-			Ghost ghost=ghosts.get(entry.getKey());
+			if(!moves.containsKey(ghostType))
+				continue;
+			
+			Ghost ghost=ghosts.get(ghostType);
 		
 			if(currentLevelTime>1 && ghost.lairTime==0 && ghost.lastMoveMade!=MOVE.NEUTRAL)
 			{
 				if(force || (powerPillWasEaten || globalReverse))
 				{
 					ghost.lastMoveMade=ghost.lastMoveMade.opposite();
-					ghost.currentNodeIndex=currentMaze.graph[ghost.currentNodeIndex].neighbourhood.get(ghost.lastMoveMade);
+					ghost.currentNodeIndex=currentMaze.neighbours[ghost.currentNodeIndex*Maze.NUM_DIRECTIONS+ghost.lastMoveMade.ordinal()];
 					reversed=true;
 					timeOfLastGlobalReversal = totalTime;
 				}
@@ -662,11 +1462,12 @@ public final class Game
 	{		
 		pacmanWasEaten=false;
 		
-		for(GHOST ghost : GHOST.values())
+		for(GHOST ghost : GHOSTS)
 			ghostsEaten.put(ghost,false);
 		
-		for(Ghost ghost : ghosts.values())
+		for(GHOST ghostType : GHOSTS)
 		{
+			Ghost ghost=ghosts.get(ghostType);
 			int distance=getShortestPathDistance(pacman.currentNodeIndex, ghost.currentNodeIndex);
 			
 			if(distance<=EAT_DISTANCE && distance!=-1)
@@ -697,9 +1498,13 @@ public final class Game
 			}
 		}
 		
-		for(Ghost ghost : ghosts.values())
+		for(GHOST ghostType : GHOSTS)
+		{
+			Ghost ghost=ghosts.get(ghostType);
+			
 			if(ghost.edibleTime>0)
 				ghost.edibleTime--;
+		}
 	}
 	
 	/**
@@ -746,7 +1551,7 @@ public final class Game
 	{
 		int count=0;
 		
-		for(GHOST ghost : GHOST.values())
+		for(GHOST ghost : GHOSTS)
 			if(ghostsEaten.get(ghost))
 				count++;
 		
@@ -783,6 +1588,18 @@ public final class Game
 		return timeOfLastGlobalReversal;
 	}
 	
+	/**
+	 * Returns the seed the game was created with. Together with the initial maze and the moves supplied to
+	 * advanceGame(), it determines the whole game (see MoveRecorder).
+	 * The seed of a read-only view or copy is salted (see getReadOnlyView()).
+	 * 
+	 * @return the seed of the game
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+	
 	/**
 	 * Checks whether the game is over or not: all lives are lost or 16 levels have been 
 	 * played. The variable is set by the methods _feast() and _checkLevelState().
@@ -812,7 +1629,7 @@ public final class Game
 	 */
 	public int getNodeXCood(int nodeIndex)
 	{
-		return currentMaze.graph[nodeIndex].x;
+		return currentMaze.xCoords[nodeIndex];
 	}
 	
 	/**
@@ -823,7 +1640,7 @@ public final class Game
 	 */
 	public int getNodeYCood(int nodeIndex)
 	{
-		return currentMaze.graph[nodeIndex].y;
+		return currentMaze.yCoords[nodeIndex];
 	}
 	
 	/**
@@ -1225,10 +2042,46 @@ public final class Game
     */
     public int getNeighbour(int nodeIndex, MOVE moveToBeMade)
     {
-    	Integer neighbour=currentMaze.graph[nodeIndex].neighbourhood.get(moveToBeMade);
-    	
-    	return neighbour==null ? -1 : neighbour;
+    	return currentMaze.getNeighbour(nodeIndex,moveToBeMade);
+    }
+    
+   /**
+    * Given a node index and the index of a move (its ordinal: 0=UP, 1=RIGHT, 2=DOWN, 3=LEFT), it returns the node
+    * index the move takes one to. If there is no neighbour in that direction, the method returns -1.
+    * 
+    * @param nodeIndex The current node index
+	* @param moveIndex The ordinal of the move to be made (not NEUTRAL)
+	* @return The node index of the node the move takes one to
+    */
+    public int getNeighbour(int nodeIndex, int moveIndex)
+    {
+    	return currentMaze.neighbours[nodeIndex*Maze.NUM_DIRECTIONS+moveIndex];
     }
+    
+	/**
+	 * Gets the possible moves from the node index specified as a bit mask: bit m is set if the move
+	 * with ordinal m is possible. Unlike getPossibleMoves(), this does not create or return an array.
+	 *
+	 * @param nodeIndex The current node index
+	 * @return The possible moves as a bit mask
+	 */
+	public int getPossibleMovesMask(int nodeIndex)
+	{
+		return currentMaze.possibleMoves[nodeIndex];
+	}
+	
+	/**
+	 * Gets the possible moves, except the one that corresponds to the reverse of the move supplied, as a bit mask:
+	 * bit m is set if the move with ordinal m is possible.
+	 *
+	 * @param nodeIndex The current node index
+	 * @param lastModeMade The last mode made (possible moves will exclude the reverse)
+	 * @return The possible moves as a bit mask
+	 */
+	public int getPossibleMovesMask(int nodeIndex,MOVE lastModeMade)
+	{
+		return currentMaze.getPossibleMoves(nodeIndex,lastModeMade);
+	}
     	
 	/**
 	 * Method that returns the direction to take given a node index and an index of a neighbouring
@@ -1240,12 +2093,13 @@ public final class Game
 	 */
 	public MOVE getMoveToMakeToReachDirectNeighbour(int currentNodeIndex,int neighbourNodeIndex)
 	{
-		for(MOVE move : MOVE.values())
+		int offset=currentNodeIndex*Maze.NUM_DIRECTIONS;
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			if(currentMaze.graph[currentNodeIndex].neighbourhood.containsKey(move) 
-					&& currentMaze.graph[currentNodeIndex].neighbourhood.get(move)==neighbourNodeIndex)
+			if(currentMaze.neighbours[offset+m]==neighbourNodeIndex)
 			{
-				return move;
+				return MOVES[m];
 			}
 		}
 		
@@ -1265,12 +2119,7 @@ public final class Game
 	 */
 	public int getShortestPathDistance(int fromNodeIndex,int toNodeIndex)
 	{
-		if(fromNodeIndex==toNodeIndex)
-			return 0;		
-		else if(fromNodeIndex<toNodeIndex)
-			return currentMaze.shortestPathDistances[((toNodeIndex*(toNodeIndex+1))/2)+fromNodeIndex];
-		else
-			return currentMaze.shortestPathDistances[((fromNodeIndex*(fromNodeIndex+1))/2)+toNodeIndex];
+		return currentMaze.shortestPathDistances.getDistance(fromNodeIndex,toNodeIndex);
 	}
 	
 	/**
@@ -1282,7 +2131,7 @@ public final class Game
 	 */
 	public double getEuclideanDistance(int fromNodeIndex,int toNodeIndex)
 	{
-		return Math.sqrt(Math.pow(currentMaze.graph[fromNodeIndex].x-currentMaze.graph[toNodeIndex].x,2)+Math.pow(currentMaze.graph[fromNodeIndex].y-currentMaze.graph[toNodeIndex].y,2));
+		return Math.sqrt(Math.pow(currentMaze.xCoords[fromNodeIndex]-currentMaze.xCoords[toNodeIndex],2)+Math.pow(currentMaze.yCoords[fromNodeIndex]-currentMaze.yCoords[toNodeIndex],2));
 	}
 	
 	/**
@@ -1294,7 +2143,7 @@ public final class Game
 	 */
 	public int getManhattanDistance(int fromNodeIndex,int toNodeIndex)
 	{
-		return (int)(Math.abs(currentMaze.graph[fromNodeIndex].x-currentMaze.graph[toNodeIndex].x)+Math.abs(currentMaze.graph[fromNodeIndex].y-currentMaze.graph[toNodeIndex].y));
+		return (int)(Math.abs(currentMaze.xCoords[fromNodeIndex]-currentMaze.xCoords[toNodeIndex])+Math.abs(currentMaze.yCoords[fromNodeIndex]-currentMaze.yCoords[toNodeIndex]));
 	}
 	
 	/**
@@ -1410,14 +2259,19 @@ public final class Game
 
 		double minDistance=Integer.MAX_VALUE;
 
-		for(Entry<MOVE,Integer> entry : currentMaze.graph[fromNodeIndex].neighbourhood.entrySet())
+		int moves=currentMaze.possibleMoves[fromNodeIndex];
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			double distance=getDistance(entry.getValue(),toNodeIndex,distanceMeasure);
+			if((moves&(1<<m))==0)
+				continue;
+			
+			double distance=getDistance(currentMaze.neighbours[fromNodeIndex*Maze.NUM_DIRECTIONS+m],toNodeIndex,distanceMeasure);
 								
 			if(distance<minDistance)
 			{
 				minDistance=distance;
-				move=entry.getKey();	
+				move=MOVES[m];	
 			}
 		}
 		
@@ -1438,14 +2292,19 @@ public final class Game
 
 		double maxDistance=Integer.MIN_VALUE;
 
-		for(Entry<MOVE,Integer> entry : currentMaze.graph[fromNodeIndex].neighbourhood.entrySet())
+		int moves=currentMaze.possibleMoves[fromNodeIndex];
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			double distance=getDistance(entry.getValue(),toNodeIndex,distanceMeasure);
+			if((moves&(1<<m))==0)
+				continue;
+			
+			double distance=getDistance(currentMaze.neighbours[fromNodeIndex*Maze.NUM_DIRECTIONS+m],toNodeIndex,distanceMeasure);
 								
 			if(distance>maxDistance)
 			{
 				maxDistance=distance;
-				move=entry.getKey();	
+				move=MOVES[m];	
 			}
 		}
 		
@@ -1467,14 +2326,19 @@ public final class Game
 
 		double minDistance=Integer.MAX_VALUE;
 
-		for(Entry<MOVE,Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet())
+		int moves=currentMaze.getPossibleMoves(fromNodeIndex,lastMoveMade);
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			double distance=getDistance(entry.getValue(),toNodeIndex,distanceMeasure);
+			if((moves&(1<<m))==0)
+				continue;
+			
+			double distance=getDistance(currentMaze.neighbours[fromNodeIndex*Maze.NUM_DIRECTIONS+m],toNodeIndex,distanceMeasure);
 								
 			if(distance<minDistance)
 			{
 				minDistance=distance;
-				move=entry.getKey();	
+				move=MOVES[m];	
 			}
 		}
 		
@@ -1496,14 +2360,19 @@ public final class Game
 
 		double maxDistance=Integer.MIN_VALUE;
 
-		for(Entry<MOVE,Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet())
+		int moves=currentMaze.getPossibleMoves(fromNodeIndex,lastMoveMade);
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			double distance=getDistance(entry.getValue(),toNodeIndex,distanceMeasure);
+			if((moves&(1<<m))==0)
+				continue;
+			
+			double distance=getDistance(currentMaze.neighbours[fromNodeIndex*Maze.NUM_DIRECTIONS+m],toNodeIndex,distanceMeasure);
 								
 			if(distance>maxDistance)
 			{
 				maxDistance=distance;
-				move=entry.getKey();	
+				move=MOVES[m];	
 			}
 		}
 		
@@ -1525,14 +2394,19 @@ public final class Game
 
 		double minDistance=Integer.MAX_VALUE;
 
-		for(Entry<MOVE,Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet())
+		int moves=currentMaze.getPossibleMoves(fromNodeIndex,lastMoveMade);
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			double distance=getDistance(entry.getValue(),toNodeIndex,lastMoveMade,distanceMeasure);
+			if((moves&(1<<m))==0)
+				continue;
+			
+			double distance=getDistance(currentMaze.neighbours[fromNodeIndex*Maze.NUM_DIRECTIONS+m],toNodeIndex,lastMoveMade,distanceMeasure);
 								
 			if(distance<minDistance)
 			{
 				minDistance=distance;
-				move=entry.getKey();	
+				move=MOVES[m];	
 			}
 		}
 		
@@ -1554,14 +2428,19 @@ public final class Game
 
 		double maxDistance=Integer.MIN_VALUE;
 
-		for(Entry<MOVE,Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet())
+		int moves=currentMaze.getPossibleMoves(fromNodeIndex,lastMoveMade);
+		
+		for(int m=0;m<Maze.NUM_DIRECTIONS;m++)
 		{
-			double distance=getDistance(entry.getValue(),toNodeIndex,lastMoveMade,distanceMeasure);
+			if((moves&(1<<m))==0)
+				continue;
+			
+			double distance=getDistance(currentMaze.neighbours[fromNodeIndex*Maze.NUM_DIRECTIONS+m],toNodeIndex,lastMoveMade,distanceMeasure);
 								
 			if(distance>maxDistance)
 			{
 				maxDistance=distance;
-				move=entry.getKey();	
+				move=MOVES[m];	
 			}
 		}
 		
@@ -1593,7 +2472,7 @@ public final class Game
 	 */
 	public int[] getShortestPath(int fromNodeIndex,int toNodeIndex)
 	{
-		return caches[mazeIndex].getPathFromA2B(fromNodeIndex,toNodeIndex);
+		return MazeRegistry.getCache(mazeIndex).getPathFromA2B(fromNodeIndex,toNodeIndex);
 	}
 	
 	/**
@@ -1626,10 +2505,10 @@ public final class Game
 	 */
 	public int[] getShortestPath(int fromNodeIndex,int toNodeIndex,MOVE lastMoveMade)
 	{
-		if(currentMaze.graph[fromNodeIndex].neighbourhood.size()==0)//lair
+		if(currentMaze.possibleMoves[fromNodeIndex]==0)//lair
 			return new int[0];
 
-		return caches[mazeIndex].getPathFromA2B(fromNodeIndex,toNodeIndex,lastMoveMade);
+		return MazeRegistry.getCache(mazeIndex).getPathFromA2B(fromNodeIndex,toNodeIndex,lastMoveMade);
 	}
 	
 	/**
@@ -1660,9 +2539,9 @@ public final class Game
 	 */
 	public int getShortestPathDistance(int fromNodeIndex,int toNodeIndex,MOVE lastMoveMade)
 	{
-		if(currentMaze.graph[fromNodeIndex].neighbourhood.size()==0)//lair
+		if(currentMaze.possibleMoves[fromNodeIndex]==0)//lair
 			return 0;
 
-		return caches[mazeIndex].getPathDistanceFromA2B(fromNodeIndex,toNodeIndex,lastMoveMade);
+		return MazeRegistry.getCache(mazeIndex).getPathDistanceFromA2B(fromNodeIndex,toNodeIndex,lastMoveMade);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,675 @@
+package pacman.game;
+
+import pacman.game.internal.EngineRandom;
+import pacman.game.internal.Maze;
+import pacman.game.internal.MazeRegistry;
+
+import static pacman.game.Constants.*;
+
+/**
+ * A batch of games stored as a structure of arrays: every variable of the game state is one primitive array
+ * indexed by game (or by game and ghost, at game*NUM_GHOSTS+ghost), and the pills are bitsets stored as long
+ * words. All games are advanced together, one phase of the game logic at a time, with exactly the same rules
+ * as Game.advanceGame(): games with the same seed (or copied from the same Game) and the same moves have the
+ * same states, tick by tick, as the corresponding Game objects (see pacman.benchmark.GameBatchCheck).
+ *
+ * This is meant for controllers that need very many cheap forward simulations, such as Monte-Carlo rollouts:
+ * a batch does not allocate once it has been created, and a rollout touches a few small arrays instead of a
+ * graph of objects per game. Moves are given as MOVE ordinals. Games that are over are no longer advanced.
+ *
+ * Unlike Game.advanceGame(), the batch does not write the moves the ghosts actually made back into the moves
+ * supplied. A batch is not thread-safe, but different threads may use different batches.
+ */
+public final class GameBatch
+{
+	private static final int NEUTRAL=MOVE.NEUTRAL.ordinal();
+	private static final int LEFT=MOVE.LEFT.ordinal();
+	private static final int NUM_DIRECTIONS=Maze.NUM_DIRECTIONS;
+	private static final GHOST[] GHOSTS=GHOST.values();
+	private static final MOVE[] MOVES=MOVE.values();
+
+	//derived per-maze tables, shared by all batches
+	private static final MazeTables[] mazeTables=new MazeTables[NUM_MAZES];
+
+	private final int size;
+	final int pillWords;
+
+	//the state of the games, laid out like the fields of Game
+	final int[] mazeIndex, levelCount, currentLevelTime, totalTime, score, ghostEatMultiplier, timeOfLastGlobalReversal;
+	final boolean[] gameOver, pacmanWasEaten, pillWasEaten, powerPillWasEaten, ghostsEaten;
+	final int[] pacmanNode, pacmanMove, pacmanLives;
+	final boolean[] pacmanExtraLife;
+	final int[] ghostNode, ghostMove, ghostEdibleTime, ghostLairTime;
+	final long[] pills, powerPills;
+	final int[] pillsLeft, powerPillsLeft;
+	final long[] randomStates;
+
+	//scratch: the ghost moves of the current tick and the games that were not over when it started
+	private final int[] moves;
+	private final boolean[] active;
+
+	/**
+	 * Creates a batch of games. The games are set up like new Game(0); use reset() or set() to initialise them.
+	 *
+	 * @param size The number of games
+	 */
+	public GameBatch(int size)
+	{
+		this.size=size;
+
+		int maxPills=64;
+
+		for(int i=0;i<NUM_MAZES;i++)
+			maxPills=Math.max(maxPills,getTables(i).maze.pillIndices.length);
+
+		pillWords=(maxPills+63)>>>6;
+
+		mazeIndex=new int[size];
+		levelCount=new int[size];
+		currentLevelTime=new int[size];
+		totalTime=new int[size];
+		score=new int[size];
+		ghostEatMultiplier=new int[size];
+		timeOfLastGlobalReversal=new int[size];
+		gameOver=new boolean[size];
+		pacmanWasEaten=new boolean[size];
+		pillWasEaten=new boolean[size];
+		powerPillWasEaten=new boolean[size];
+		ghostsEaten=new boolean[size*NUM_GHOSTS];
+		pacmanNode=new int[size];
+		pacmanMove=new int[size];
+		pacmanLives=new int[size];
+		pacmanExtraLife=new boolean[size];
+		ghostNode=new int[size*NUM_GHOSTS];
+		ghostMove=new int[size*NUM_GHOSTS];
+		ghostEdibleTime=new int[size*NUM_GHOSTS];
+		ghostLairTime=new int[size*NUM_GHOSTS];
+		pills=new long[size*pillWords];
+		powerPills=new long[size];
+		pillsLeft=new int[size];
+		powerPillsLeft=new int[size];
+		randomStates=new long[size];
+		moves=new int[size*NUM_GHOSTS];
+		active=new boolean[size];
+
+		for(int i=0;i<size;i++)
+			reset(i,0,0);
+	}
+
+	/**
+	 * Returns the number of games in the batch.
+	 *
+	 * @return The number of games
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Sets up a new game, like new Game(seed).
+	 *
+	 * @param index The index of the game
+	 * @param seed The seed for the pseudo-random number generator
+	 */
+	public void reset(int index,long seed)
+	{
+		reset(index,seed,0);
+	}
+
+	/**
+	 * Sets up a new game, like new Game(seed,initialMaze).
+	 *
+	 * @param index The index of the game
+	 * @param seed The seed for the pseudo-random number generator
+	 * @param initialMaze The maze to start the game with
+	 */
+	public void reset(int index,long seed,int initialMaze)
+	{
+		randomStates[index]=EngineRandom.initialState(seed);
+		mazeIndex[index]=initialMaze;
+		score[index]=currentLevelTime[index]=levelCount[index]=totalTime[index]=0;
+		ghostEatMultiplier[index]=1;
+		gameOver[index]=false;
+		timeOfLastGlobalReversal[index]=-1;
+		pacmanWasEaten[index]=false;
+		pillWasEaten[index]=false;
+		powerPillWasEaten[index]=false;
+
+		for(int g=0;g<NUM_GHOSTS;g++)
+			ghostsEaten[index*NUM_GHOSTS+g]=false;
+
+		_setPills(index);
+		_initGhosts(index);
+
+		pacmanNode[index]=getTables(initialMaze).maze.initialPacManNodeIndex;
+		pacmanMove[index]=LEFT;
+		pacmanLives[index]=NUM_LIVES;
+		pacmanExtraLife[index]=false;
+	}
+
+	/**
+	 * Sets a game of the batch to the state of the game supplied, including the state of its random number
+	 * generator: the game of the batch then plays out exactly like the game supplied (or like its copy()).
+	 *
+	 * @param index The index of the game
+	 * @param game The game to copy
+	 */
+	public void set(int index,Game game)
+	{
+		game.copyInto(this,index);
+	}
+
+	/**
+	 * Copies the state of one game of the batch to another one, e.g., to start several rollouts from the same
+	 * position.
+	 *
+	 * @param from The index of the game to copy
+	 * @param to The index of the game to overwrite
+	 */
+	public void copy(int from,int to)
+	{
+		mazeIndex[to]=mazeIndex[from];
+		levelCount[to]=levelCount[from];
+		currentLevelTime[to]=currentLevelTime[from];
+		totalTime[to]=totalTime[from];
+		score[to]=score[from];
+		ghostEatMultiplier[to]=ghostEatMultiplier[from];
+		timeOfLastGlobalReversal[to]=timeOfLastGlobalReversal[from];
+		gameOver[to]=gameOver[from];
+		pacmanWasEaten[to]=pacmanWasEaten[from];
+		pillWasEaten[to]=pillWasEaten[from];
+		powerPillWasEaten[to]=powerPillWasEaten[from];
+		pacmanNode[to]=pacmanNode[from];
+		pacmanMove[to]=pacmanMove[from];
+		pacmanLives[to]=pacmanLives[from];
+		pacmanExtraLife[to]=pacmanExtraLife[from];
+
+		System.arraycopy(ghostsEaten,from*NUM_GHOSTS,ghostsEaten,to*NUM_GHOSTS,NUM_GHOSTS);
+		System.arraycopy(ghostNode,from*NUM_GHOSTS,ghostNode,to*NUM_GHOSTS,NUM_GHOSTS);
+		System.arraycopy(ghostMove,from*NUM_GHOSTS,ghostMove,to*NUM_GHOSTS,NUM_GHOSTS);
+		System.arraycopy(ghostEdibleTime,from*NUM_GHOSTS,ghostEdibleTime,to*NUM_GHOSTS,NUM_GHOSTS);
+		System.arraycopy(ghostLairTime,from*NUM_GHOSTS,ghostLairTime,to*NUM_GHOSTS,NUM_GHOSTS);
+		System.arraycopy(pills,from*pillWords,pills,to*pillWords,pillWords);
+
+		powerPills[to]=powerPills[from];
+		pillsLeft[to]=pillsLeft[from];
+		powerPillsLeft[to]=powerPillsLeft[from];
+		randomStates[to]=randomStates[from];
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	///////////////////////////  Game-engine   //////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Advances all games that are not over by one time step, like Game.advanceGame().
+	 *
+	 * @param pacManMoves The ordinal of the move of Ms Pac-Man, per game
+	 * @param ghostMoves The ordinals of the moves of the ghosts at game*NUM_GHOSTS+ghost, or null to let every ghost
+	 * continue with its last move (like passing null to Game.advanceGame())
+	 */
+	public void advance(int[] pacManMoves,int[] ghostMoves)
+	{
+		if(ghostMoves==null)
+			System.arraycopy(ghostMove,0,moves,0,moves.length);
+		else
+			System.arraycopy(ghostMoves,0,moves,0,moves.length);
+
+		for(int i=0;i<size;i++)
+			active[i]=!gameOver[i];
+
+		for(int i=0;i<size;i++)
+			if(active[i])
+				_updatePacMan(i,pacManMoves[i]);
+
+		for(int i=0;i<size;i++)
+			if(active[i])
+				_eatPills(i);
+
+		for(int i=0;i<size;i++)
+			if(active[i] && !_reverseGhosts(i))
+				_updateGhosts(i);
+
+		for(int i=0;i<size;i++)
+			if(active[i])
+				_feast(i);
+
+		//a game that ends in _feast() still completes the time step, as in Game.updateGame()
+		for(int i=0;i<size;i++)
+			if(active[i])
+				_updateGame(i);
+	}
+
+	private void _updatePacMan(int i,int move)
+	{
+		int[] neighbours=getTables(mazeIndex[i]).maze.neighbours;
+		int node=pacmanNode[i];
+
+		//the move is possible, else continue in the same direction, else stay put
+		if(move==NEUTRAL || neighbours[node*NUM_DIRECTIONS+move]==-1)
+			move=pacmanMove[i]!=NEUTRAL && neighbours[node*NUM_DIRECTIONS+pacmanMove[i]]!=-1 ? pacmanMove[i] : NEUTRAL;
+
+		pacmanMove[i]=move;
+
+		if(move!=NEUTRAL)
+			pacmanNode[i]=neighbours[node*NUM_DIRECTIONS+move];
+	}
+
+	private void _eatPills(int i)
+	{
+		MazeTables tables=getTables(mazeIndex[i]);
+		int node=pacmanNode[i];
+
+		pillWasEaten[i]=false;
+
+		int pillIndex=tables.pillIndices[node];
+
+		if(pillIndex>=0)
+		{
+			int word=i*pillWords+(pillIndex>>>6);
+			long bit=1L<<pillIndex;
+
+			if((pills[word]&bit)!=0)
+			{
+				score[i]+=PILL;
+				pills[word]&=~bit;
+				pillsLeft[i]--;
+				pillWasEaten[i]=true;
+			}
+		}
+
+		powerPillWasEaten[i]=false;
+
+		int powerPillIndex=tables.powerPillIndices[node];
+
+		if(powerPillIndex>=0 && (powerPills[i]&(1L<<powerPillIndex))!=0)
+		{
+			score[i]+=POWER_PILL;
+			ghostEatMultiplier[i]=1;
+			powerPills[i]&=~(1L<<powerPillIndex);
+			powerPillsLeft[i]--;
+
+			int newEdibleTime=(int)(EDIBLE_TIME*(Math.pow(EDIBLE_TIME_REDUCTION,levelCount[i]%LEVEL_RESET_REDUCTION)));
+
+			for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+				ghostEdibleTime[g]=ghostLairTime[g]==0 ? newEdibleTime : 0;
+
+			powerPillWasEaten[i]=true;
+		}
+	}
+
+	private boolean _reverseGhosts(int i)
+	{
+		boolean reversed=false;
+		boolean globalReverse=EngineRandom.nextDouble(randomStates,i)<GHOST_REVERSAL;
+
+		if(currentLevelTime[i]<=1 || !(powerPillWasEaten[i] || globalReverse))
+			return false;
+
+		int[] neighbours=getTables(mazeIndex[i]).maze.neighbours;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			if(ghostLairTime[g]==0 && ghostMove[g]!=NEUTRAL)
+			{
+				ghostMove[g]=opposite(ghostMove[g]);
+				ghostNode[g]=neighbours[ghostNode[g]*NUM_DIRECTIONS+ghostMove[g]];
+				reversed=true;
+				timeOfLastGlobalReversal[i]=totalTime[i];
+			}
+		}
+
+		return reversed;
+	}
+
+	private void _updateGhosts(int i)
+	{
+		Maze maze=getTables(mazeIndex[i]).maze;
+		int[] neighbours=maze.neighbours;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			if(ghostLairTime[g]==0 && (ghostEdibleTime[g]==0 || ghostEdibleTime[g]%GHOST_SPEED_REDUCTION!=0))
+			{
+				int node=ghostNode[g];
+				int last=ghostMove[g];
+				int move=moves[g];
+
+				//the move is possible and not a reversal, else continue in the same direction, else pick a random move
+				if(move==NEUTRAL || neighbours[node*NUM_DIRECTIONS+move]==-1 || move==opposite(last))
+				{
+					if(last!=NEUTRAL && neighbours[node*NUM_DIRECTIONS+last]!=-1)
+						move=last;
+					else
+					{
+						int possible=maze.getPossibleMoves(node,MOVES[last]);
+						int choice=EngineRandom.nextInt(randomStates,i,Integer.bitCount(possible));
+
+						for(;choice>0;choice--)
+							possible&=possible-1;
+
+						move=Integer.numberOfTrailingZeros(possible);
+					}
+				}
+
+				ghostMove[g]=move;
+				ghostNode[g]=neighbours[node*NUM_DIRECTIONS+move];
+			}
+		}
+	}
+
+	private void _feast(int i)
+	{
+		Maze maze=getTables(mazeIndex[i]).maze;
+		int pacman=pacmanNode[i];
+
+		pacmanWasEaten[i]=false;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+			ghostsEaten[g]=false;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			int distance=maze.shortestPathDistances.getDistance(pacman,ghostNode[g]);
+
+			if(distance<=EAT_DISTANCE && distance!=-1)
+			{
+				if(ghostEdibleTime[g]>0)								//pac-man eats ghost
+				{
+					score[i]+=GHOST_EAT_SCORE*ghostEatMultiplier[i];
+					ghostEatMultiplier[i]*=2;
+					ghostEdibleTime[g]=0;
+					ghostLairTime[g]=(int)(COMMON_LAIR_TIME*(Math.pow(LAIR_REDUCTION,levelCount[i]%LEVEL_RESET_REDUCTION)));
+					ghostNode[g]=maze.lairNodeIndex;
+					ghostMove[g]=NEUTRAL;
+					ghostsEaten[g]=true;
+				}
+				else													//ghost eats pac-man
+				{
+					pacmanLives[i]--;
+					pacmanWasEaten[i]=true;
+
+					if(pacmanLives[i]<=0)
+						gameOver[i]=true;
+					else
+						_levelReset(i);
+
+					return;
+				}
+			}
+		}
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+			if(ghostEdibleTime[g]>0)
+				ghostEdibleTime[g]--;
+	}
+
+	/*
+	 * The rest of Game.updateGame(): lair times, extra life, time and level state.
+	 */
+	private void _updateGame(int i)
+	{
+		int initialGhostNode=getTables(mazeIndex[i]).maze.initialGhostNodeIndex;
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+			if(ghostLairTime[g]>0)
+				if(--ghostLairTime[g]==0)
+					ghostNode[g]=initialGhostNode;
+
+		if(!pacmanExtraLife[i] && score[i]>=EXTRA_LIFE_SCORE)
+		{
+			pacmanExtraLife[i]=true;
+			pacmanLives[i]++;
+		}
+
+		totalTime[i]++;
+		currentLevelTime[i]++;
+
+		if(totalTime[i]+1>MAX_TIME)
+		{
+			gameOver[i]=true;
+			score[i]+=pacmanLives[i]*AWARD_LIFE_LEFT;
+		}
+		else if((pillsLeft[i]==0 && powerPillsLeft[i]==0) || currentLevelTime[i]>=LEVEL_LIMIT)
+			_newLevelReset(i);
+	}
+
+	private void _newLevelReset(int i)
+	{
+		mazeIndex[i]=(mazeIndex[i]+1)%NUM_MAZES;
+		levelCount[i]++;
+		currentLevelTime[i]=0;
+		ghostEatMultiplier[i]=1;
+
+		_setPills(i);
+		_levelReset(i);
+	}
+
+	private void _levelReset(int i)
+	{
+		ghostEatMultiplier[i]=1;
+
+		_initGhosts(i);
+
+		pacmanNode[i]=getTables(mazeIndex[i]).maze.initialPacManNodeIndex;
+		pacmanMove[i]=LEFT;
+	}
+
+	private void _setPills(int i)
+	{
+		Maze maze=getTables(mazeIndex[i]).maze;
+		int numPills=maze.pillIndices.length;
+
+		for(int w=0;w<pillWords;w++)
+		{
+			int bits=Math.max(0,Math.min(64,numPills-(w<<6)));
+			pills[i*pillWords+w]=bits==64 ? -1L : (1L<<bits)-1;
+		}
+
+		powerPills[i]=(1L<<maze.powerPillIndices.length)-1;
+		pillsLeft[i]=numPills;
+		powerPillsLeft[i]=maze.powerPillIndices.length;
+	}
+
+	private void _initGhosts(int i)
+	{
+		int lairNode=getTables(mazeIndex[i]).maze.lairNodeIndex;
+
+		for(GHOST ghostType : GHOSTS)
+		{
+			int g=i*NUM_GHOSTS+ghostType.ordinal();
+
+			ghostNode[g]=lairNode;
+			ghostEdibleTime[g]=0;
+			ghostLairTime[g]=(int)(ghostType.initialLairTime*(Math.pow(LAIR_REDUCTION,levelCount[i]%LEVEL_RESET_REDUCTION)));
+			ghostMove[g]=NEUTRAL;
+		}
+	}
+
+	private static int opposite(int move)
+	{
+		return move==NEUTRAL ? NEUTRAL : (move+2)&3;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	///////////////////  Query Methods (return only)  ///////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the state of a game in the format of Game.getGameState(), so a game of the batch can be compared
+	 * with, or turned into, a Game (using Game.setGameState()).
+	 *
+	 * @param i The index of the game
+	 * @return The game state as a string
+	 */
+	public String getGameState(int i)
+	{
+		Maze maze=getTables(mazeIndex[i]).maze;
+		StringBuilder sb=new StringBuilder();
+
+		sb.append(mazeIndex[i]+","+totalTime[i]+","+score[i]+","+currentLevelTime[i]+","+levelCount[i]+","
+				+pacmanNode[i]+","+MOVES[pacmanMove[i]]+","+pacmanLives[i]+","+pacmanExtraLife[i]+",");
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+			sb.append(ghostNode[g]+","+ghostEdibleTime[g]+","+ghostLairTime[g]+","+MOVES[ghostMove[g]]+",");
+
+		for(int p=0;p<maze.pillIndices.length;p++)
+			sb.append(isPillStillAvailable(i,p) ? "1" : "0");
+
+		sb.append(",");
+
+		for(int p=0;p<maze.powerPillIndices.length;p++)
+			sb.append(isPowerPillStillAvailable(i,p) ? "1" : "0");
+
+		sb.append(",");
+		sb.append(timeOfLastGlobalReversal[i]);
+		sb.append(",");
+		sb.append(pacmanWasEaten[i]);
+		sb.append(",");
+
+		for(int g=i*NUM_GHOSTS;g<(i+1)*NUM_GHOSTS;g++)
+		{
+			sb.append(ghostsEaten[g]);
+			sb.append(",");
+		}
+
+		sb.append(pillWasEaten[i]);
+		sb.append(",");
+		sb.append(powerPillWasEaten[i]);
+
+		return sb.toString();
+	}
+
+	public boolean gameOver(int i)
+	{
+		return gameOver[i];
+	}
+
+	public int getScore(int i)
+	{
+		return score[i];
+	}
+
+	public int getTotalTime(int i)
+	{
+		return totalTime[i];
+	}
+
+	public int getCurrentLevel(int i)
+	{
+		return levelCount[i];
+	}
+
+	public int getMazeIndex(int i)
+	{
+		return mazeIndex[i];
+	}
+
+	public int getPacmanCurrentNodeIndex(int i)
+	{
+		return pacmanNode[i];
+	}
+
+	public int getPacmanLastMoveMade(int i)
+	{
+		return pacmanMove[i];
+	}
+
+	public int getPacmanNumberOfLivesRemaining(int i)
+	{
+		return pacmanLives[i];
+	}
+
+	public int getGhostCurrentNodeIndex(int i,GHOST ghostType)
+	{
+		return ghostNode[i*NUM_GHOSTS+ghostType.ordinal()];
+	}
+
+	public int getGhostLastMoveMade(int i,GHOST ghostType)
+	{
+		return ghostMove[i*NUM_GHOSTS+ghostType.ordinal()];
+	}
+
+	public int getGhostEdibleTime(int i,GHOST ghostType)
+	{
+		return ghostEdibleTime[i*NUM_GHOSTS+ghostType.ordinal()];
+	}
+
+	public int getGhostLairTime(int i,GHOST ghostType)
+	{
+		return ghostLairTime[i*NUM_GHOSTS+ghostType.ordinal()];
+	}
+
+	public int getNumberOfActivePills(int i)
+	{
+		return pillsLeft[i];
+	}
+
+	public int getNumberOfActivePowerPills(int i)
+	{
+		return powerPillsLeft[i];
+	}
+
+	public boolean isPillStillAvailable(int i,int pillIndex)
+	{
+		return (pills[i*pillWords+(pillIndex>>>6)]&(1L<<pillIndex))!=0;
+	}
+
+	public boolean isPowerPillStillAvailable(int i,int powerPillIndex)
+	{
+		return (powerPills[i]&(1L<<powerPillIndex))!=0;
+	}
+
+	/**
+	 * Returns the maze a game is currently played in.
+	 *
+	 * @param i The index of the game
+	 * @return The maze
+	 */
+	public Maze getCurrentMaze(int i)
+	{
+		return getTables(mazeIndex[i]).maze;
+	}
+
+	/*
+	 * The pill indices of the nodes of a maze as flat arrays (-1 where there is none).
+	 */
+	private static final class MazeTables
+	{
+		final Maze maze;
+		final int[] pillIndices, powerPillIndices;
+
+		MazeTables(Maze maze)
+		{
+			this.maze=maze;
+
+			pillIndices=new int[maze.graph.length];
+			powerPillIndices=new int[maze.graph.length];
+
+			for(int n=0;n<maze.graph.length;n++)
+			{
+				pillIndices[n]=maze.graph[n].pillIndex;
+				powerPillIndices[n]=maze.graph[n].powerPillIndex;
+			}
+		}
+	}
+
+	private static MazeTables getTables(int mazeIndex)
+	{
+		MazeTables tables=mazeTables[mazeIndex];
+
+		if(tables==null)
+		{
+			synchronized(mazeTables)
+			{
+				if(mazeTables[mazeIndex]==null)
+					mazeTables[mazeIndex]=new MazeTables(MazeRegistry.getMaze(mazeIndex));
+
+				tables=mazeTables[mazeIndex];
+			}
+		}
+
+		return tables;
+	}
+}
@@ -0,0 +1,60 @@
+package pacman.game;
+
+import java.util.ArrayDeque;
+
+/**
+ * A per-thread pool of Game instances for search algorithms. Instead of calling copy() at every node of
+ * a search tree, a search borrows a copy of a game using copyOf() and hands it back using release() once
+ * the node has been expanded. The released instances are overwritten using Game.copyInto(), so a search
+ * that releases its games creates (almost) no garbage after the first few moves.
+ *
+ * Each thread has its own pool, so no synchronisation is required. A game must not be used after it has
+ * been released, and it must not be released twice. Games that are never released are simply garbage
+ * collected.
+ */
+public final class GamePool
+{
+	/** The maximum number of idle games kept per thread. */
+	public static final int MAX_POOL_SIZE=1024;
+
+	private static final ThreadLocal<ArrayDeque<Game>> pools=new ThreadLocal<ArrayDeque<Game>>()
+	{
+		protected ArrayDeque<Game> initialValue()
+		{
+			return new ArrayDeque<Game>();
+		}
+	};
+
+	private GamePool(){}
+
+	/**
+	 * Returns a copy of the game supplied, reusing a released game of the calling thread if there is one.
+	 *
+	 * @param source The game to be copied
+	 * @return A copy of the game, equivalent to source.copy()
+	 */
+	public static Game copyOf(Game source)
+	{
+		Game game=pools.get().pollLast();
+
+		if(game==null)
+			return source.copy();
+
+		source.copyInto(game);
+
+		return game;
+	}
+
+	/**
+	 * Hands a game obtained from copyOf() (or copy()) back to the pool of the calling thread.
+	 *
+	 * @param game The game that is no longer used
+	 */
+	public static void release(Game game)
+	{
+		ArrayDeque<Game> pool=pools.get();
+
+		if(game!=null && pool.size()<MAX_POOL_SIZE)
+			pool.addLast(game);
+	}
+}
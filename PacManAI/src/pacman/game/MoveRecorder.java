@@ -0,0 +1,243 @@
+package pacman.game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+/**
+ * Records a game as its seed, its initial maze and the moves supplied to advanceGame(): since the game is
+ * deterministic given these, MoveReplay can play it back by advancing a new game with the same moves. A tick
+ * takes a single bit if the moves are those of the previous tick and 13 bits otherwise, which is far less than
+ * even a ReplayWriter record, so large archives of games (e.g., of a Tournament) can be kept.
+ *
+ * To detect a replay that does not play out like the original (e.g., because the game engine has changed),
+ * the ticks are written in blocks of a checksum interval (CHECKSUM_INTERVAL by default), each followed by the
+ * ticks of the block at which the ghosts were reversed and a checksum of the state at the end of the block. A
+ * block is written to the file as soon as it is complete, so only the last block is lost if the JVM dies.
+ *
+ * The recorder advances the game itself (see advanceGame()), so that it sees the moves before the game
+ * changes the map of ghost moves, and the game must not be advanced in any other way.
+ *
+ * Format: the header is MAGIC (4 bytes), VERSION (1 byte), the seed (8 bytes), the initial maze (1 byte) and
+ * the checksum interval (variable-length int). A block is the number of ticks (variable-length int), the
+ * number of bytes of moves followed by the moves, the number of reversals followed by the gaps between their
+ * ticks (variable-length ints) and the checksum (8 bytes). The moves are a stream of bits, least significant
+ * first: 0 for the moves of the previous tick, or 1 followed by the 12 bits of the Ms Pac-Man move plus 5
+ * times the move of each ghost in turn (with the ordinals of the moves as digits). A block of 0 ticks ends the
+ * recording.
+ */
+public final class MoveRecorder implements Closeable
+{
+	static final int MAGIC=0x504D4D56;	//"PMMV"
+	static final int VERSION=1;
+	static final int CHECKSUM_INTERVAL=64;
+	static final int MOVE_BITS=12;		//for the 5^5 combinations of moves
+
+	private static final MOVE[] MOVES=MOVE.values();
+	private static final GHOST[] GHOSTS=GHOST.values();
+
+	private final FileChannel channel;
+	private final ByteBuffer block;
+	private final Game game;
+	private final int checksumInterval;
+	private final byte[] moveBytes;
+	private final int[] reversals;
+	private int ticks, numReversals, lastMoves, numMoveBytes;
+	private long bits;
+	private int bitCount;
+
+	/**
+	 * Creates (or overwrites) the recording of a game that has not been advanced yet, with a checksum every
+	 * CHECKSUM_INTERVAL ticks.
+	 *
+	 * @param fileName The name of the file
+	 * @param game The new game
+	 * @throws IOException If the file cannot be written
+	 */
+	public MoveRecorder(String fileName,Game game) throws IOException
+	{
+		this(fileName,game,CHECKSUM_INTERVAL);
+	}
+
+	/**
+	 * Creates (or overwrites) the recording of a game that has not been advanced yet.
+	 *
+	 * @param fileName The name of the file
+	 * @param game The new game
+	 * @param checksumInterval The number of ticks of a block
+	 * @throws IOException If the file cannot be written
+	 */
+	public MoveRecorder(String fileName,Game game,int checksumInterval) throws IOException
+	{
+		if(game.getTotalTime()!=0 || game.getCurrentLevel()!=0)
+			throw new IllegalArgumentException("Only new games can be recorded");
+
+		if(checksumInterval<1)
+			throw new IllegalArgumentException("The checksum interval must be at least 1: "+checksumInterval);
+
+		this.game=game;
+		this.checksumInterval=checksumInterval;
+		moveBytes=new byte[(checksumInterval*(MOVE_BITS+1)+7)/8];
+		reversals=new int[checksumInterval];
+		block=ByteBuffer.allocate(4*5+moveBytes.length+5*checksumInterval+8);
+		lastMoves=-1;
+
+		channel=FileChannel.open(Paths.get(fileName),StandardOpenOption.CREATE,StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		ByteBuffer header=ByteBuffer.allocate(4+1+8+1+5);
+		header.putInt(MAGIC);
+		header.put((byte)VERSION);
+		header.putLong(game.getSeed());
+		header.put((byte)game.getMazeIndex());
+		_putInt(header,checksumInterval);
+		header.flip();
+		_write(header);
+	}
+
+	/**
+	 * Records the moves and advances the game with them, like Game.advanceGame().
+	 *
+	 * @param pacManMove The move of Ms Pac-Man (null, e.g., before her controller has answered, is recorded as
+	 *            NEUTRAL, which the game treats the same)
+	 * @param ghostMoves The moves of the ghosts (null to continue their last moves, missing ghosts stay put)
+	 * @throws IOException If a complete block cannot be written
+	 */
+	public void advanceGame(MOVE pacManMove,EnumMap<GHOST,MOVE> ghostMoves) throws IOException
+	{
+		//the moves as the game sees them: see Game._completeGhostMoves()
+		int moves=0;
+
+		for(int i=GHOSTS.length-1;i>=0;i--)
+		{
+			MOVE move=ghostMoves==null ? game.getGhostLastMoveMade(GHOSTS[i]) : ghostMoves.get(GHOSTS[i]);
+			moves=moves*MOVES.length+(move==null ? MOVE.NEUTRAL : move).ordinal();
+		}
+
+		moves=moves*MOVES.length+(pacManMove==null ? MOVE.NEUTRAL : pacManMove).ordinal();
+
+		if(moves==lastMoves)
+			_putBits(0,1);
+		else
+		{
+			_putBits(1,1);
+			_putBits(moves,MOVE_BITS);
+			lastMoves=moves;
+		}
+
+		int reversal=game.getTimeOfLastGlobalReversal();
+
+		game.advanceGame(pacManMove,ghostMoves);
+
+		if(game.getTimeOfLastGlobalReversal()!=reversal)
+			reversals[numReversals++]=ticks;
+
+		if(++ticks==checksumInterval)
+			_writeBlock();
+	}
+
+	/**
+	 * Returns the game being recorded.
+	 *
+	 * @return The game
+	 */
+	public Game getGame()
+	{
+		return game;
+	}
+
+	/**
+	 * Writes the last block and the end of the recording, and closes the file.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			if(ticks>0)
+				_writeBlock();
+
+			_writeBlock();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the checksum of a game that MoveReplay compares at the end of each block: the state hash,
+	 * the score and the total time.
+	 *
+	 * @param game The game
+	 * @return The checksum
+	 */
+	static long checksum(Game game)
+	{
+		return game.stateHash()^(((long)game.getScore()<<32|game.getTotalTime())*0x9E3779B97F4A7C15L);
+	}
+
+	private void _writeBlock() throws IOException
+	{
+		if(bitCount>0)
+			_putBits(0,8-bitCount);
+
+		block.clear();
+		_putInt(block,ticks);
+		_putInt(block,numMoveBytes);
+		block.put(moveBytes,0,numMoveBytes);
+		_putInt(block,numReversals);
+
+		for(int i=0,last=-1;i<numReversals;last=reversals[i++])
+			_putInt(block,reversals[i]-last-1);
+
+		if(ticks>0)
+			block.putLong(checksum(game));
+
+		block.flip();
+		_write(block);
+
+		//each block starts afresh, so it can be decoded on its own
+		ticks=0;
+		numReversals=0;
+		numMoveBytes=0;
+		lastMoves=-1;
+	}
+
+	//appends the lowest n bits of value to the moves of the block
+	private void _putBits(int value,int n)
+	{
+		bits|=(long)value<<bitCount;
+		bitCount+=n;
+
+		while(bitCount>=8)
+		{
+			moveBytes[numMoveBytes++]=(byte)bits;
+			bits>>>=8;
+			bitCount-=8;
+		}
+	}
+
+	private void _write(ByteBuffer buffer) throws IOException
+	{
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static void _putInt(ByteBuffer buffer,int value)
+	{
+		while((value&~0x7F)!=0)
+		{
+			buffer.put((byte)((value&0x7F)|0x80));
+			value>>>=7;
+		}
+
+		buffer.put((byte)value);
+	}
+}
@@ -0,0 +1,261 @@
+package pacman.game;
+
+import static pacman.game.MoveRecorder.MAGIC;
+import static pacman.game.MoveRecorder.MOVE_BITS;
+import static pacman.game.MoveRecorder.VERSION;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+
+/**
+ * Plays back a recording written by MoveRecorder by re-simulating it: a new game is created from the seed and
+ * initial maze of the recording and advanced with the recorded moves, one tick at a time. The ghost reversals
+ * of each tick and the checksum at the end of each block are compared with the recorded ones, and an
+ * IllegalStateException is thrown at the first block that does not match, since the replay cannot be trusted
+ * from there on. A block cut short at the end of the file (e.g., because the JVM that wrote it died) ends the
+ * replay.
+ */
+public final class MoveReplay implements Closeable
+{
+	private static final MOVE[] MOVES=MOVE.values();
+	private static final GHOST[] GHOSTS=GHOST.values();
+	private static final int MOVE_COMBINATIONS=(int)Math.pow(MOVES.length,1+GHOSTS.length);
+
+	private final FileChannel channel;
+	private final Game game;
+	private final EnumMap<GHOST,MOVE> ghostMoves;
+	private final int checksumInterval;
+	private final byte[] moveBytes;
+	private final int[] reversals;
+	private long filePosition;
+	private int ticks, blockTicks, blockTick, numReversals, nextReversal, moveByte, bitCount, lastMoves;
+	private long bits, checksum;
+	private boolean ended;
+
+	/**
+	 * Opens a recording and creates the game it starts from.
+	 *
+	 * @param fileName The name of the file
+	 * @throws IOException If the file cannot be read or is not a recording of this version
+	 */
+	public MoveReplay(String fileName) throws IOException
+	{
+		channel=FileChannel.open(Paths.get(fileName),StandardOpenOption.READ);
+
+		ByteBuffer header=_read(4+1+8+1+5);
+
+		if(header.remaining()<4+1+8+1+1 || header.getInt()!=MAGIC || header.get()!=VERSION)
+		{
+			channel.close();
+			throw new IOException("Not a move recording of version "+VERSION+": "+fileName);
+		}
+
+		long seed=header.getLong();
+		int maze=header.get();
+		checksumInterval=_getInt(header);
+		filePosition=header.position();
+
+		game=new Game(seed,maze);
+		ghostMoves=new EnumMap<GHOST,MOVE>(GHOST.class);
+		moveBytes=new byte[(checksumInterval*(MOVE_BITS+1)+7)/8];
+		reversals=new int[checksumInterval];
+	}
+
+	/**
+	 * Returns whether a file starts like a recording written by MoveRecorder.
+	 *
+	 * @param fileName The name of the file
+	 * @return true if the file starts with MoveRecorder.MAGIC
+	 * @throws IOException If the file cannot be read
+	 */
+	public static boolean isMoveReplay(String fileName) throws IOException
+	{
+		FileChannel channel=FileChannel.open(Paths.get(fileName),StandardOpenOption.READ);
+
+		try
+		{
+			ByteBuffer header=ByteBuffer.allocate(4);
+
+			while(header.hasRemaining() && channel.read(header)>=0);
+
+			return !header.hasRemaining() && header.getInt(0)==MAGIC;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the game being re-simulated, which is advanced by advance().
+	 *
+	 * @return The game
+	 */
+	public Game getGame()
+	{
+		return game;
+	}
+
+	/**
+	 * Returns the number of ticks played back so far.
+	 *
+	 * @return The number of ticks
+	 */
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * Advances the game with the moves of the next tick.
+	 *
+	 * @return false if the recording has ended (the game is then left unchanged)
+	 * @throws IOException If the file cannot be read
+	 * @throws IllegalStateException If the game does not play out as recorded
+	 */
+	public boolean advance() throws IOException
+	{
+		if(ended || blockTick==blockTicks && !_readBlock())
+			return false;
+
+		int moves=lastMoves;
+
+		if(_getBits(1)!=0)
+			moves=lastMoves=_getBits(MOVE_BITS);
+
+		if(moves<0 || moves>=MOVE_COMBINATIONS)
+			throw new IllegalStateException("The recording is damaged at tick "+ticks);
+
+		MOVE pacManMove=MOVES[moves%MOVES.length];
+
+		for(GHOST ghost : GHOSTS)
+		{
+			moves/=MOVES.length;
+			ghostMoves.put(ghost,MOVES[moves%MOVES.length]);
+		}
+
+		int reversal=game.getTimeOfLastGlobalReversal();
+
+		game.advanceGame(pacManMove,ghostMoves);
+
+		boolean reversed=game.getTimeOfLastGlobalReversal()!=reversal;
+		boolean recorded=nextReversal<numReversals && reversals[nextReversal]==blockTick;
+
+		if(reversed!=recorded)
+			throw new IllegalStateException("The replay diverges at tick "+ticks+": the ghosts "
+					+(reversed ? "reversed, but were not recorded to" : "did not reverse, but were recorded to"));
+
+		if(recorded)
+			nextReversal++;
+
+		ticks++;
+
+		if(++blockTick==blockTicks && MoveRecorder.checksum(game)!=checksum)
+			throw new IllegalStateException("The replay diverges in the ticks "+(ticks-blockTicks)+" to "+(ticks-1));
+
+		return true;
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	//reads the next block; false if it is the last one, or cut short
+	private boolean _readBlock() throws IOException
+	{
+		ByteBuffer block=_read(5+5+moveBytes.length+5+5*checksumInterval+8);
+
+		try
+		{
+			blockTicks=_getInt(block);
+
+			if(blockTicks==0 || blockTicks>checksumInterval)
+			{
+				ended=true;
+				return false;
+			}
+
+			int numBytes=_getInt(block);
+			block.get(moveBytes,0,numBytes);
+
+			numReversals=_getInt(block);
+
+			for(int i=0,last=-1;i<numReversals;i++)
+				last=reversals[i]=last+_getInt(block)+1;
+
+			checksum=block.getLong();
+		}
+		catch(BufferUnderflowException|IndexOutOfBoundsException e)
+		{
+			ended=true;
+			return false;
+		}
+
+		filePosition+=block.position();
+		blockTick=0;
+		nextReversal=0;
+		moveByte=0;
+		bits=0;
+		bitCount=0;
+		lastMoves=-1;
+
+		return true;
+	}
+
+	private int _getBits(int n)
+	{
+		while(bitCount<n)
+		{
+			bits|=(moveBytes[moveByte++]&0xFFL)<<bitCount;
+			bitCount+=8;
+		}
+
+		int value=(int)(bits&((1<<n)-1));
+		bits>>>=n;
+		bitCount-=n;
+
+		return value;
+	}
+
+	//reads (up to) the number of bytes supplied from the current file offset
+	private ByteBuffer _read(int bytes) throws IOException
+	{
+		ByteBuffer result=ByteBuffer.allocate(bytes);
+
+		while(result.hasRemaining())
+		{
+			int read=channel.read(result,filePosition+result.position());
+
+			if(read<0)
+				break;
+		}
+
+		result.flip();
+
+		return result;
+	}
+
+	private static int _getInt(ByteBuffer buffer)
+	{
+		int value=0;
+
+		for(int shift=0;;shift+=7)
+		{
+			byte b=buffer.get();
+			value|=(b&0x7F)<<shift;
+
+			if(b>=0)
+				return value;
+		}
+	}
+}
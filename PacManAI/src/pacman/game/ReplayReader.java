@@ -0,0 +1,375 @@
+package pacman.game;
+
+import static pacman.game.ReplayWriter.BUFFER_SIZE;
+import static pacman.game.ReplayWriter.END;
+import static pacman.game.ReplayWriter.FOOTER_MAGIC;
+import static pacman.game.ReplayWriter.FOOTER_SIZE;
+import static pacman.game.ReplayWriter.KEYFRAME;
+import static pacman.game.ReplayWriter.MAGIC;
+import static pacman.game.ReplayWriter.MAX_RECORD_SIZE;
+import static pacman.game.ReplayWriter.PILLS_EATEN;
+import static pacman.game.ReplayWriter.PILLS_RESET;
+import static pacman.game.ReplayWriter.POWER_PILLS_EATEN;
+import static pacman.game.ReplayWriter.VERSION;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import pacman.game.internal.Maze;
+import pacman.game.internal.MazeRegistry;
+
+/**
+ * Reads a replay written by ReplayWriter, one tick at a time, into a game. The file is streamed through a
+ * buffer of ReplayWriter.BUFFER_SIZE bytes, so replays of any length can be read with the same memory. A record
+ * cut short at the end of the file (e.g., because the JVM that wrote it died) ends the replay.
+ *
+ * seek() jumps to any tick: it looks up the last keyframe at or before the tick in the index of the footer,
+ * reads from there and decodes at most a keyframe interval of records. A replay without a footer (one that was
+ * not closed, or of version 1) is scanned from the start instead.
+ */
+public final class ReplayReader implements Closeable
+{
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int[] values;
+	private final BitSet pills, powerPills;
+	private final int[] keyframeTicks;		//the index of the footer, empty if there is none
+	private final long[] keyframeOffsets;
+	private final long start, end;			//the file offsets of the first record and of the end of the records
+	private final int length;				//the number of ticks according to the footer, -1 if there is none
+	private long filePosition;				//the file offset of the next byte to be read into the buffer
+	private boolean ended;
+	private int ticks;
+
+	/**
+	 * Opens a replay file and reads its header and footer.
+	 *
+	 * @param fileName The name of the file
+	 * @throws IOException If the file cannot be read or is not a replay of this version (or an older one)
+	 */
+	public ReplayReader(String fileName) throws IOException
+	{
+		channel=FileChannel.open(Paths.get(fileName),StandardOpenOption.READ);
+		buffer=ByteBuffer.allocate(BUFFER_SIZE);
+		values=new int[Game.STATE_VALUES];
+		pills=new BitSet();
+		powerPills=new BitSet();
+
+		ByteBuffer header=_read(6,0);
+		int version=header.remaining()<6 || header.getInt()!=MAGIC ? -1 : header.get();
+
+		if(version<1 || version>VERSION || header.get()!=Game.STATE_VALUES)
+		{
+			channel.close();
+			throw new IOException("Not a replay of version "+VERSION+" or older: "+fileName);
+		}
+
+		start=6;
+
+		//the footer, if the replay was closed properly
+		long size=channel.size(), footer=-1;
+		int count=0;
+		ByteBuffer trailer=version>=2 && size-start>=FOOTER_SIZE ? _read(FOOTER_SIZE,size-FOOTER_SIZE) : null;
+
+		if(trailer!=null && trailer.getInt(16)==FOOTER_MAGIC)
+		{
+			footer=trailer.getLong(0);
+			count=trailer.getInt(12);
+
+			if(footer<start || footer+12L*count+FOOTER_SIZE!=size)
+				footer=-1;
+		}
+
+		if(footer<0)
+		{
+			end=size;
+			length=-1;
+			keyframeTicks=new int[0];
+			keyframeOffsets=new long[0];
+		}
+		else
+		{
+			end=footer;
+			length=trailer.getInt(8);
+			keyframeTicks=new int[count];
+			keyframeOffsets=new long[count];
+
+			ByteBuffer index=_read(12*count,footer);
+
+			for(int i=0;i<count;i++)
+			{
+				keyframeTicks[i]=index.getInt();
+				keyframeOffsets[i]=index.getLong();
+			}
+		}
+
+		_jump(start,0);
+	}
+
+	/**
+	 * Returns whether a file starts like a replay written by ReplayWriter (as opposed to, e.g., a replay of
+	 * getGameState() strings).
+	 *
+	 * @param fileName The name of the file
+	 * @return true if the file starts with ReplayWriter.MAGIC
+	 * @throws IOException If the file cannot be read
+	 */
+	public static boolean isReplay(String fileName) throws IOException
+	{
+		FileChannel channel=FileChannel.open(Paths.get(fileName),StandardOpenOption.READ);
+
+		try
+		{
+			ByteBuffer header=ByteBuffer.allocate(4);
+
+			while(header.hasRemaining() && channel.read(header)>=0);
+
+			return !header.hasRemaining() && header.getInt(0)==MAGIC;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the next tick of the replay into the game supplied.
+	 *
+	 * @param game The game to set to the state of the next tick
+	 * @return false if the replay has ended (the game is then left unchanged)
+	 * @throws IOException If the file cannot be read
+	 */
+	public boolean next(Game game) throws IOException
+	{
+		if(!_decode())
+			return false;
+
+		game.setState(values,pills,powerPills);
+
+		return true;
+	}
+
+	/**
+	 * Moves to a tick, so that the next call to next() reads that tick: the reader jumps to the last keyframe
+	 * at or before the tick (or to the start of the replay if it has no index) unless the tick is ahead of the
+	 * current position and before the next keyframe, and then decodes the records in between.
+	 *
+	 * @param tick The tick, from 0 (the first tick of the replay)
+	 * @return false if the replay ends before the tick
+	 * @throws IOException If the file cannot be read
+	 */
+	public boolean seek(int tick) throws IOException
+	{
+		if(tick<0)
+			throw new IllegalArgumentException("No such tick: "+tick);
+
+		int keyframe=Arrays.binarySearch(keyframeTicks,tick);
+
+		if(keyframe<0)
+			keyframe=-keyframe-2;	//the last keyframe before the tick
+
+		if(keyframe>=0 && (tick<ticks || keyframeTicks[keyframe]>ticks))
+			_jump(keyframeOffsets[keyframe],keyframeTicks[keyframe]);
+		else if(tick<ticks)
+			_jump(start,0);
+
+		while(ticks<tick)
+			if(!_decode())
+				return false;
+
+		return !ended;
+	}
+
+	/**
+	 * Returns the number of ticks read (or skipped by seek()) so far, i.e., the tick next() reads next.
+	 *
+	 * @return The number of ticks
+	 */
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * Returns the number of ticks of the replay as recorded in its footer.
+	 *
+	 * @return The number of ticks, or -1 if the replay has no footer
+	 */
+	public int getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the ticks of the keyframes of the replay, as recorded in its footer.
+	 *
+	 * @return The ticks of the keyframes (empty if the replay has no footer)
+	 */
+	public int[] getKeyframeTicks()
+	{
+		return keyframeTicks.clone();
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	//decodes the next record into values, pills and powerPills
+	private boolean _decode() throws IOException
+	{
+		if(ended)
+			return false;
+
+		if(buffer.remaining()<MAX_RECORD_SIZE)
+			_fill();
+
+		try
+		{
+			if(!buffer.hasRemaining())
+				throw new BufferUnderflowException();
+
+			long mask=_getLong();
+
+			if(mask==END)
+			{
+				ended=true;
+				return false;
+			}
+
+			//the values of a keyframe are differences from 0
+			if((mask&KEYFRAME)!=0)
+				Arrays.fill(values,0);
+
+			for(int i=0;i<values.length;i++)
+				if((mask&(1L<<i))!=0)
+				{
+					int zigzag=_getInt();
+					values[i]+=(zigzag>>>1)^-(zigzag&1);
+				}
+
+			if((mask&PILLS_RESET)!=0)
+			{
+				Maze maze=MazeRegistry.getMaze(values[0]);
+
+				pills.clear();
+				pills.set(0,maze.pillIndices.length);
+				powerPills.clear();
+				powerPills.set(0,maze.powerPillIndices.length);
+			}
+
+			if((mask&PILLS_EATEN)!=0)
+				_removeEaten(pills);
+
+			if((mask&POWER_PILLS_EATEN)!=0)
+				_removeEaten(powerPills);
+		}
+		catch(BufferUnderflowException e)
+		{
+			ended=true;
+			return false;
+		}
+
+		ticks++;
+
+		return true;
+	}
+
+	//continues reading from a record at the file offset supplied
+	private void _jump(long offset,int tick)
+	{
+		filePosition=offset;
+		buffer.clear();
+		buffer.limit(0);
+		Arrays.fill(values,0);
+		pills.clear();
+		powerPills.clear();
+		ticks=tick;
+		ended=false;
+	}
+
+	//moves the unread bytes to the front of the buffer and fills it up with the records that follow
+	private void _fill() throws IOException
+	{
+		buffer.compact();
+
+		if(end-filePosition<buffer.remaining())
+			buffer.limit(buffer.position()+(int)(end-filePosition));
+
+		while(buffer.hasRemaining())
+		{
+			int read=channel.read(buffer,filePosition);
+
+			if(read<0)
+				break;
+
+			filePosition+=read;
+		}
+
+		buffer.flip();
+	}
+
+	//reads (up to) the number of bytes supplied from a file offset
+	private ByteBuffer _read(int bytes,long offset) throws IOException
+	{
+		ByteBuffer result=ByteBuffer.allocate(bytes);
+
+		while(result.hasRemaining())
+		{
+			int read=channel.read(result,offset+result.position());
+
+			if(read<0)
+				break;
+		}
+
+		result.flip();
+
+		return result;
+	}
+
+	private void _removeEaten(BitSet available)
+	{
+		int last=-1;
+
+		for(int n=_getInt();n>0;n--)
+		{
+			last+=_getInt()+1;
+			available.clear(last);
+		}
+	}
+
+	private int _getInt()
+	{
+		int value=0;
+
+		for(int shift=0;;shift+=7)
+		{
+			byte b=buffer.get();
+			value|=(b&0x7F)<<shift;
+
+			if(b>=0)
+				return value;
+		}
+	}
+
+	private long _getLong()
+	{
+		long value=0;
+
+		for(int shift=0;;shift+=7)
+		{
+			byte b=buffer.get();
+			value|=(long)(b&0x7F)<<shift;
+
+			if(b>=0)
+				return value;
+		}
+	}
+}
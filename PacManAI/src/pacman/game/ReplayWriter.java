@@ -0,0 +1,307 @@
+package pacman.game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import pacman.game.internal.Maze;
+import pacman.game.internal.MazeRegistry;
+
+/**
+ * Writes a replay of a game as a stream of binary records, one per tick, that ReplayReader reads back. Each
+ * record only holds what changed since the previous one: a bit mask of the values of the state (see
+ * Game.getState()) that changed, followed by their differences, and the indices of the pills and power pills
+ * that were eaten. When a new maze or level starts, the record instead says that all pills are back and lists
+ * the ones that are missing. A typical tick takes a handful of bytes instead of the 300 or so characters of
+ * getGameState(). Every keyframe interval (KEYFRAME_INTERVAL ticks by default), a keyframe is written
+ * instead: a record of the full state that does not depend on the previous ones, so ReplayReader can seek
+ * to any tick by decoding at most one interval of records from the keyframe before it.
+ *
+ * The records are written through a buffer of BUFFER_SIZE bytes to a file channel, so a game is never held in
+ * memory. The buffer is drained to the file before every keyframe (and whenever it is full), so if the JVM dies,
+ * the replay can be read up to the last keyframe at least: only the ticks since then are lost. Drained records
+ * survive the JVM but may still be lost with the machine unless flush() forced them to the device; a record cut
+ * short at the end of the file is ignored by the reader.
+ *
+ * Format: the header is MAGIC (4 bytes), VERSION (1 byte) and Game.STATE_VALUES (1 byte). A record is the mask as
+ * a variable-length long, followed by the differences of the changed values as zigzag-encoded variable-length
+ * ints, and the lists of eaten pills and eaten power pills (if the mask says so), each as a count followed by the
+ * gaps between ascending indices. A keyframe is a record of all values (as differences from 0) with the
+ * PILLS_RESET and KEYFRAME bits set. When the replay is closed, a record of just the END mask is written, so a
+ * damaged footer is never mistaken for records, and a footer is appended: the tick and file offset of each
+ * keyframe (an int and a long each), followed by the offset of the footer (long), the number of ticks (int), the
+ * number of keyframes (int) and FOOTER_MAGIC (int).
+ */
+public final class ReplayWriter implements Closeable
+{
+	static final int MAGIC=0x504D5250;	//"PMRP"
+	static final int FOOTER_MAGIC=0x504D5246;	//"PMRF"
+	static final int VERSION=2;
+	static final int FOOTER_SIZE=8+4+4+4;
+	static final int KEYFRAME_INTERVAL=256;
+	static final int BUFFER_SIZE=1<<16;
+
+	//the bits of the mask after those of the values
+	static final long PILLS_EATEN=1L<<Game.STATE_VALUES;
+	static final long POWER_PILLS_EATEN=PILLS_EATEN<<1;
+	static final long PILLS_RESET=PILLS_EATEN<<2;
+	static final long KEYFRAME=PILLS_EATEN<<3;
+	static final long END=PILLS_EATEN<<4;	//the mask of the record that ends the replay
+
+	//an upper bound of the size of a record (10 bytes per long, 5 per int) for mazes of up to 512 pills
+	static final int MAX_RECORD_SIZE=10+5*Game.STATE_VALUES+5*(2+512);
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int[] values, previous;
+	private final BitSet pills, powerPills, previousPills, previousPowerPills, eaten;
+	private final int keyframeInterval;
+	private int ticks, keyframes;
+	private int[] keyframeTicks;
+	private long[] keyframeOffsets;
+	private long drained;	//the number of bytes written to the file so far
+
+	/**
+	 * Creates (or overwrites) the replay file, with a keyframe every KEYFRAME_INTERVAL ticks, and writes its
+	 * header.
+	 *
+	 * @param fileName The name of the file
+	 * @throws IOException If the file cannot be written
+	 */
+	public ReplayWriter(String fileName) throws IOException
+	{
+		this(fileName,KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates (or overwrites) the replay file and writes its header.
+	 *
+	 * @param fileName The name of the file
+	 * @param keyframeInterval The number of ticks from one keyframe to the next
+	 * @throws IOException If the file cannot be written
+	 */
+	public ReplayWriter(String fileName,int keyframeInterval) throws IOException
+	{
+		if(keyframeInterval<1)
+			throw new IllegalArgumentException("The keyframe interval must be at least 1: "+keyframeInterval);
+
+		channel=FileChannel.open(Paths.get(fileName),StandardOpenOption.CREATE,StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer=ByteBuffer.allocate(BUFFER_SIZE);
+		values=new int[Game.STATE_VALUES];
+		previous=new int[Game.STATE_VALUES];
+		pills=new BitSet();
+		powerPills=new BitSet();
+		previousPills=new BitSet();
+		previousPowerPills=new BitSet();
+		eaten=new BitSet();
+		this.keyframeInterval=keyframeInterval;
+		keyframeTicks=new int[16];
+		keyframeOffsets=new long[16];
+
+		buffer.putInt(MAGIC);
+		buffer.put((byte)VERSION);
+		buffer.put((byte)Game.STATE_VALUES);
+	}
+
+	/**
+	 * Appends the current state of the game.
+	 *
+	 * @param game The game, usually just after it was advanced
+	 * @throws IOException If the buffer cannot be written to the file
+	 */
+	public void write(Game game) throws IOException
+	{
+		boolean keyframe=ticks%keyframeInterval==0;
+
+		//draining at each keyframe bounds what a crash loses to one keyframe interval
+		if(keyframe && buffer.position()>0 || buffer.remaining()<MAX_RECORD_SIZE)
+			_drain();
+
+		game.getState(values,pills,powerPills);
+
+		long mask=keyframe ? KEYFRAME : 0;
+
+		if(keyframe)
+		{
+			if(keyframes==keyframeTicks.length)
+			{
+				keyframeTicks=Arrays.copyOf(keyframeTicks,2*keyframes);
+				keyframeOffsets=Arrays.copyOf(keyframeOffsets,2*keyframes);
+			}
+
+			keyframeTicks[keyframes]=ticks;
+			keyframeOffsets[keyframes++]=drained+buffer.position();
+			Arrays.fill(previous,0);
+		}
+
+		for(int i=0;i<values.length;i++)
+			if(keyframe || values[i]!=previous[i])
+				mask|=1L<<i;
+
+		Maze maze=MazeRegistry.getMaze(values[0]);
+		boolean reset=keyframe || values[0]!=previous[0] || _reappeared(pills,previousPills) || _reappeared(powerPills,previousPowerPills);
+
+		//after a reset, all pills of the maze count as present before the eaten ones are removed
+		if(reset)
+		{
+			previousPills.clear();
+			previousPills.set(0,maze.pillIndices.length);
+			previousPowerPills.clear();
+			previousPowerPills.set(0,maze.powerPillIndices.length);
+			mask|=PILLS_RESET;
+		}
+
+		if(!pills.equals(previousPills))
+			mask|=PILLS_EATEN;
+
+		if(!powerPills.equals(previousPowerPills))
+			mask|=POWER_PILLS_EATEN;
+
+		_putLong(mask);
+
+		for(int i=0;i<values.length;i++)
+			if((mask&(1L<<i))!=0)
+			{
+				int delta=values[i]-previous[i];
+				_putInt((delta<<1)^(delta>>31));
+				previous[i]=values[i];
+			}
+
+		if((mask&PILLS_EATEN)!=0)
+			_putEaten(previousPills,pills);
+
+		if((mask&POWER_PILLS_EATEN)!=0)
+			_putEaten(previousPowerPills,powerPills);
+
+		previousPills.clear();
+		previousPills.or(pills);
+		previousPowerPills.clear();
+		previousPowerPills.or(powerPills);
+		ticks++;
+	}
+
+	/**
+	 * Returns the number of ticks written so far.
+	 *
+	 * @return The number of ticks
+	 */
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * Writes the buffered records to the file.
+	 *
+	 * @throws IOException If the file cannot be written
+	 */
+	public void flush() throws IOException
+	{
+		_drain();
+		channel.force(false);
+	}
+
+	/**
+	 * Writes the buffered records and the footer, and closes the file.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			if(buffer.remaining()<MAX_RECORD_SIZE)
+				_drain();
+
+			_putLong(END);
+
+			long footer=drained+buffer.position();
+
+			for(int i=0;i<keyframes;i++)
+			{
+				if(buffer.remaining()<12)
+					_drain();
+
+				buffer.putInt(keyframeTicks[i]);
+				buffer.putLong(keyframeOffsets[i]);
+			}
+
+			if(buffer.remaining()<FOOTER_SIZE)
+				_drain();
+
+			buffer.putLong(footer);
+			buffer.putInt(ticks);
+			buffer.putInt(keyframes);
+			buffer.putInt(FOOTER_MAGIC);
+
+			_drain();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private void _drain() throws IOException
+	{
+		buffer.flip();
+
+		while(buffer.hasRemaining())
+			drained+=channel.write(buffer);
+
+		buffer.clear();
+	}
+
+	private static boolean _reappeared(BitSet current,BitSet previous)
+	{
+		for(int i=current.nextSetBit(0);i>=0;i=current.nextSetBit(i+1))
+			if(!previous.get(i))
+				return true;
+
+		return false;
+	}
+
+	//writes the indices that are in before but not in after
+	private void _putEaten(BitSet before,BitSet after)
+	{
+		eaten.clear();
+		eaten.or(before);
+		eaten.andNot(after);
+
+		_putInt(eaten.cardinality());
+
+		int last=-1;
+
+		for(int i=eaten.nextSetBit(0);i>=0;i=eaten.nextSetBit(i+1))
+		{
+			_putInt(i-last-1);
+			last=i;
+		}
+	}
+
+	private void _putInt(int value)
+	{
+		while((value&~0x7F)!=0)
+		{
+			buffer.put((byte)((value&0x7F)|0x80));
+			value>>>=7;
+		}
+
+		buffer.put((byte)value);
+	}
+
+	private void _putLong(long value)
+	{
+		while((value&~0x7FL)!=0)
+		{
+			buffer.put((byte)((value&0x7F)|0x80));
+			value>>>=7;
+		}
+
+		buffer.put((byte)value);
+	}
+}
@@ -0,0 +1,37 @@
+package pacman.game;
+
+import java.util.BitSet;
+
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Holds everything a time step may change so that the step can be undone: the positions and directions of
+ * Ms Pac-Man and the ghosts, the pills and power pills, the score, the edible and lair times, the level, maze and
+ * times, the lives and the state of the random number generator. Search algorithms can use one record per
+ * level of the search tree together with Game.makeMove() and Game.unmakeMove() to explore the tree using a
+ * single game instead of one copy per node.
+ * 
+ * A record may be reused any number of times; it does not allocate memory once it has been used for the
+ * largest maze.
+ */
+public final class UndoRecord
+{
+	int mazeIndex, levelCount, currentLevelTime, totalTime, score, ghostEatMultiplier, timeOfLastGlobalReversal;
+	boolean gameOver, pacmanWasEaten, pillWasEaten, powerPillWasEaten;
+	final boolean[] ghostsEaten=new boolean[NUM_GHOSTS];
+	
+	int pacmanNodeIndex, pacmanNumberOfLivesRemaining;
+	MOVE pacmanLastMoveMade;
+	boolean pacmanHasReceivedExtraLife;
+	
+	final int[] ghostNodeIndices=new int[NUM_GHOSTS], ghostEdibleTimes=new int[NUM_GHOSTS], ghostLairTimes=new int[NUM_GHOSTS];
+	final MOVE[] ghostLastMovesMade=new MOVE[NUM_GHOSTS];
+	
+	final BitSet pills=new BitSet(), powerPills=new BitSet();
+	long randomState, boardHash;
+	
+	/** True once the record holds a state that can be restored. */
+	boolean saved;
+}
@@ -1,195 +1,294 @@
 package pacman.game.internal;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.EnumMap;
-import java.util.PriorityQueue;
 
 import pacman.game.Game;
 import pacman.game.Constants.MOVE;
 
 /*
- * This class is used to compute the shortest path for the ghosts: as these may not reverse, one cannot use 
+ * This class is used to compute the shortest path for the ghosts: as these may not reverse, one cannot use
  * a simple look-up table. Instead, we use the pre-computed shortest path distances as an admissable
  * heuristic. Although AStar needs to be run every time a path is to be found, it is very quick and does
  * not expand too many nodes beyond those on the optimal path.
+ *
+ * The graph is immutable once created and all the state of a search is kept in per-thread scratch buffers,
+ * so any number of threads may search the same graph at once. The scratch buffers are not cleared between
+ * searches: every entry is stamped with the search that wrote it and entries with an older stamp count as
+ * unvisited. The open list is a binary heap that knows the position of each node, so membership tests and
+ * removals do not need to scan it. The heap is maintained exactly like a java.util.PriorityQueue, so ties are
+ * broken, and paths are found, as before.
  */
 public class AStar
 {
-	private N[] graph;
-	
+	private static final MOVE[] MOVES=MOVE.values();
+	private static final int NONE=-1, OPEN=1, CLOSED=2;
+
+	//adjacency: the neighbours of node i are adjNodes[adjStart[i]..adjStart[i+1]), reached using adjMoves
+	private int[] adjStart;
+	private int[] adjNodes;
+	private MOVE[] adjMoves;
+
+	private final ThreadLocal<Search> searches=new ThreadLocal<Search>()
+	{
+		protected Search initialValue()
+		{
+			return new Search(adjStart.length-1);
+		}
+	};
+
 	public void createGraph(Node[] nodes)
 	{
-		graph=new N[nodes.length];
-		
-		//create graph
+		int[] start=new int[nodes.length+1];
+		int numEdges=0;
+
 		for(int i=0;i<nodes.length;i++)
-			graph[i]=new N(nodes[i].nodeIndex);
-		
-		//add neighbours
+		{
+			start[i]=numEdges;
+			numEdges+=nodes[i].neighbourhood.size();
+		}
+
+		start[nodes.length]=numEdges;
+
+		int[] neighbours=new int[numEdges];
+		MOVE[] moves=new MOVE[numEdges];
+
+		//add neighbours, in the order of the moves
 		for(int i=0;i<nodes.length;i++)
-		{	
-			EnumMap<MOVE,Integer> neighbours=nodes[i].neighbourhood;
-			MOVE[] moves=MOVE.values();
-			
-			for(int j=0;j<moves.length;j++)
-				if(neighbours.containsKey(moves[j]))
-					graph[i].adj.add(new E(graph[neighbours.get(moves[j])],moves[j],1));	
+		{
+			EnumMap<MOVE,Integer> neighbourhood=nodes[i].neighbourhood;
+			int edge=start[i];
+
+			for(int j=0;j<MOVES.length;j++)
+				if(neighbourhood.containsKey(MOVES[j]))
+				{
+					neighbours[edge]=neighbourhood.get(MOVES[j]);
+					moves[edge++]=MOVES[j];
+				}
 		}
+
+		adjStart=start;
+		adjNodes=neighbours;
+		adjMoves=moves;
 	}
-	
-	public synchronized int[] computePathsAStar(int s, int t, MOVE lastMoveMade, Game game)
-    {	
-		N start=graph[s];
-		N target=graph[t];
-		
-        PriorityQueue<N> open = new PriorityQueue<N>();
-        ArrayList<N> closed = new ArrayList<N>();
-
-        start.g = 0;
-        start.h = game.getShortestPathDistance(start.index, target.index);
-
-        start.reached=lastMoveMade;
-        
-        open.add(start);
-
-        while(!open.isEmpty())
-        {
-            N currentNode = open.poll();
-            closed.add(currentNode);
-            
-            if (currentNode.isEqual(target))
-                break;
-
-            for(E next : currentNode.adj)
-            {
-            	if(next.move!=currentNode.reached.opposite())
-            	{
-	                double currentDistance = next.cost;
-	
-	                if (!open.contains(next.node) && !closed.contains(next.node))
-	                {
-	                    next.node.g = currentDistance + currentNode.g;
-	                    next.node.h = game.getShortestPathDistance(next.node.index, target.index);
-	                    next.node.parent = currentNode;
-	                    
-	                    next.node.reached=next.move;
-	
-	                    open.add(next.node);
-	                }
-	                else if (currentDistance + currentNode.g < next.node.g)
-	                {
-	                    next.node.g = currentDistance + currentNode.g;
-	                    next.node.parent = currentNode;
-	                    
-	                    next.node.reached=next.move;
-	
-	                    if (open.contains(next.node))
-	                        open.remove(next.node);
-	
-	                    if (closed.contains(next.node))
-	                        closed.remove(next.node);
-	
-	                    open.add(next.node);
-	                }
-	            }
-            }
-        }
-
-        return extractPath(target);
-    }
-	
-	public synchronized int[] computePathsAStar(int s, int t, Game game)
-    {	
-		return computePathsAStar(s, t, MOVE.NEUTRAL, game);
-    }
-
-    private synchronized int[] extractPath(N target)
-    {
-    	ArrayList<Integer> route = new ArrayList<Integer>();
-        N current = target;
-        route.add(current.index);
-
-        while (current.parent != null)
-        {
-            route.add(current.parent.index);
-            current = current.parent;
-        }
-        
-        Collections.reverse(route);
-
-        int[] routeArray=new int[route.size()];
-        
-        for(int i=0;i<routeArray.length;i++)
-        	routeArray[i]=route.get(i);
-        
-        return routeArray;
-    }
-    
-    public void resetGraph()
-    {
-    	for(N node : graph)
-    	{
-    		node.g=0;
-    		node.h=0;
-    		node.parent=null;
-    		node.reached=null;
-    	}
-    }
-}
 
-class N implements Comparable<N>
-{
-    public N parent;
-    public double g, h;
-    public boolean visited = false;
-    public ArrayList<E> adj;
-    public int index;
-    public MOVE reached=null;
-
-    public N(int index)
-    {
-        adj = new ArrayList<E>();
-        this.index=index;
-    }
-
-    public N(double g, double h)
-    {
-        this.g = g;
-        this.h = h;
-    }
-
-    public boolean isEqual(N another)
-    {
-        return index == another.index;
-    }
-
-    public String toString()
-    {
-        return ""+index;
-    }
-
-	public int compareTo(N another)
+	public int[] computePathsAStar(int s, int t, MOVE lastMoveMade, Game game)
 	{
-      if ((g + h) < (another.g + another.h))
-    	  return -1;
-      else  if ((g + h) > (another.g + another.h))
-    	  return 1;
-		
-		return 0;
+		return searches.get().run(s, t, lastMoveMade, game);
 	}
-}
 
-class E
-{
-	public N node;
-	public MOVE move;
-	public double cost;
-	
-	public E(N node,MOVE move,double cost)
+	public int[] computePathsAStar(int s, int t, Game game)
+	{
+		return computePathsAStar(s, t, MOVE.NEUTRAL, game);
+	}
+
+	/*
+	 * The scratch buffers of one thread. An entry of g, h, parent, reached and status is only valid if the
+	 * stamp of the node is that of the current search.
+	 */
+	private class Search
 	{
-		this.node=node;
-		this.move=move;
-		this.cost=cost;
+		private final int[] stamp, g, h, parent, status, heapIndex;
+		private final MOVE[] reached;
+		private final int[] heap;
+		private int size, generation;
+
+		Search(int numNodes)
+		{
+			stamp=new int[numNodes];
+			g=new int[numNodes];
+			h=new int[numNodes];
+			parent=new int[numNodes];
+			status=new int[numNodes];
+			heapIndex=new int[numNodes];
+			reached=new MOVE[numNodes];
+			heap=new int[numNodes];
+		}
+
+		int[] run(int s, int t, MOVE lastMoveMade, Game game)
+		{
+			if(++generation==0)
+			{
+				Arrays.fill(stamp, 0);
+				generation=1;
+			}
+
+			size=0;
+
+			touch(s);
+			g[s]=0;
+			h[s]=game.getShortestPathDistance(s, t);
+			reached[s]=lastMoveMade;
+
+			offer(s);
+
+			while(size>0)
+			{
+				int current=poll();
+				status[current]=CLOSED;
+
+				if(current==t)
+					break;
+
+				for(int e=adjStart[current];e<adjStart[current+1];e++)
+				{
+					MOVE move=adjMoves[e];
+
+					if(move!=reached[current].opposite())
+					{
+						int next=adjNodes[e];
+						int distance=1+g[current];
+
+						if(stamp[next]!=generation || status[next]==NONE)
+						{
+							touch(next);
+							g[next]=distance;
+							h[next]=game.getShortestPathDistance(next, t);
+							parent[next]=current;
+							reached[next]=move;
+
+							offer(next);
+						}
+						else if(distance<g[next])
+						{
+							g[next]=distance;
+							parent[next]=current;
+							reached[next]=move;
+
+							if(status[next]==OPEN)
+								removeAt(heapIndex[next]);
+
+							offer(next);
+						}
+					}
+				}
+			}
+
+			return extractPath(t);
+		}
+
+		//marks the node as visited by the current search, with the state it would have after resetting the graph
+		private void touch(int node)
+		{
+			if(stamp[node]!=generation)
+			{
+				stamp[node]=generation;
+				g[node]=0;
+				h[node]=0;
+				parent[node]=NONE;
+				status[node]=NONE;
+				reached[node]=null;
+			}
+		}
+
+		private int[] extractPath(int target)
+		{
+			int length=1;
+
+			for(int current=target;parentOf(current)!=NONE;current=parentOf(current))
+				length++;
+
+			int[] route=new int[length];
+			int current=target;
+
+			for(int i=length-1;i>=0;i--)
+			{
+				route[i]=current;
+				current=parentOf(current);
+			}
+
+			return route;
+		}
+
+		private int parentOf(int node)
+		{
+			return stamp[node]==generation ? parent[node] : NONE;
+		}
+
+		//the heap operations follow those of java.util.PriorityQueue
+
+		private int compare(int a, int b)
+		{
+			int fa=g[a]+h[a], fb=g[b]+h[b];
+
+			return fa<fb ? -1 : (fa>fb ? 1 : 0);
+		}
+
+		private void offer(int node)
+		{
+			status[node]=OPEN;
+			siftUp(size++, node);
+		}
+
+		private int poll()
+		{
+			int result=heap[0];
+			int last=heap[--size];
+
+			if(size>0)
+				siftDown(0, last);
+
+			return result;
+		}
+
+		private void removeAt(int i)
+		{
+			int last=--size;
+
+			if(last!=i)
+			{
+				int moved=heap[last];
+				siftDown(i, moved);
+
+				if(heap[i]==moved)
+					siftUp(i, moved);
+			}
+		}
+
+		private void siftUp(int k, int node)
+		{
+			while(k>0)
+			{
+				int parentIndex=(k-1)>>>1;
+				int e=heap[parentIndex];
+
+				if(compare(node, e)>=0)
+					break;
+
+				set(k, e);
+				k=parentIndex;
+			}
+
+			set(k, node);
+		}
+
+		private void siftDown(int k, int node)
+		{
+			int half=size>>>1;
+
+			while(k<half)
+			{
+				int child=(k<<1)+1;
+				int c=heap[child];
+				int right=child+1;
+
+				if(right<size && compare(c, heap[right])>0)
+					c=heap[child=right];
+
+				if(compare(node, c)<=0)
+					break;
+
+				set(k, c);
+				k=child;
+			}
+
+			set(k, node);
+		}
+
+		private void set(int k, int node)
+		{
+			heap[k]=node;
+			heapIndex[node]=k;
+		}
 	}
-}
\ No newline at end of file
+}
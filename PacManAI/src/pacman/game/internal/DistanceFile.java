@@ -0,0 +1,210 @@
+package pacman.game.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Compact binary format for the pre-computed shortest path distances. The text files in data/distances contain one
+ * distance per line (about 3.5 million lines for all four mazes) and parsing them dominates the start-up time. The
+ * binary files hold exactly the same triangular matrix but can be memory-mapped: no parsing is required and all
+ * processes on the same machine share the same pages of the file system cache. Entries are stored with 16 bits
+ * (PackedDistanceTable) unless a distance does not fit, in which case 32 bits are used (IntDistanceTable).
+ *
+ * Layout (little-endian):
+ * 	int		magic number ('PMDT')
+ * 	int		format version
+ * 	int		bytes per entry (2 or 4)
+ * 	int		number of entries
+ * 	short[]	or int[], the distances in the same order as in the text files
+ */
+public final class DistanceFile
+{
+	public static final int MAGIC=0x54444D50;
+	public static final int VERSION=1;
+	public static final int HEADER_SIZE=16;
+	public static final String EXTENSION=".bin";
+
+	private static final int CHUNK_SIZE=1<<16;
+
+	private DistanceFile(){}
+
+	/*
+	 * Converts all four text files to the binary format. Binary files are also created on demand the first time
+	 * a maze is loaded, but this allows the conversion to be done once, e.g., when deploying to a read-only location.
+	 * Pass "int" as the argument to force 32-bit entries.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		boolean packed=!(args.length>0 && args[0].equals("int"));
+
+		for(int i=0;i<distNames.length;i++)
+		{
+			String textFile=pathDistances+System.getProperty("file.separator")+distNames[i];
+
+			long start=System.currentTimeMillis();
+			int numEntries=convert(textFile,textFile+EXTENSION,packed);
+
+			System.out.println(distNames[i]+"\t"+numEntries+" entries\t"+(System.currentTimeMillis()-start)+" ms");
+		}
+	}
+
+	/*
+	 * Parses the text file and writes its contents to the binary file. The data is written to a temporary file first
+	 * which is then renamed so that concurrent processes never map a partially written file. If packed is true, 16-bit
+	 * entries are used provided all distances fit. Returns the number of entries written.
+	 */
+	public static int convert(String textFile,String binaryFile,boolean packed) throws IOException
+	{
+		int[] distances=readText(textFile);
+		int bytesPerEntry=packed && fitsInShort(distances) ? 2 : 4;
+
+		File target=new File(binaryFile);
+		File tmp=File.createTempFile(target.getName(),".tmp",target.getAbsoluteFile().getParentFile());
+
+		try
+		{
+			write(distances,bytesPerEntry,tmp);
+			Files.move(tmp.toPath(),target.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			tmp.delete();
+		}
+
+		return distances.length;
+	}
+
+	/*
+	 * Memory-maps the binary file and returns a distance table backed by the mapping. The header is validated against
+	 * the number of entries expected by the maze.
+	 */
+	public static DistanceTable map(String binaryFile,int expectedEntries) throws IOException
+	{
+		RandomAccessFile raf=new RandomAccessFile(binaryFile,"r");
+
+		try
+		{
+			FileChannel channel=raf.getChannel();
+			MappedByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			int bytesPerEntry=buffer.getInt(8);
+
+			if(buffer.getInt(0)!=MAGIC || buffer.getInt(4)!=VERSION || (bytesPerEntry!=2 && bytesPerEntry!=4))
+				throw new IOException("Unsupported distance file: "+binaryFile);
+
+			int numEntries=buffer.getInt(12);
+
+			if(numEntries!=expectedEntries || channel.size()!=HEADER_SIZE+(long)bytesPerEntry*numEntries)
+				throw new IOException("Distance file "+binaryFile+" has "+numEntries+" entries, expected "+expectedEntries);
+
+			buffer.position(HEADER_SIZE);
+			ByteBuffer entries=buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+			if(bytesPerEntry==2)
+				return new PackedDistanceTable(entries.asShortBuffer());
+			else
+				return new IntDistanceTable(entries.asIntBuffer());
+		}
+		finally
+		{
+			raf.close();		//the mapping remains valid after the channel is closed
+		}
+	}
+
+	/*
+	 * Reads the distances from the original text format, one distance per line.
+	 */
+	public static int[] readText(String textFile) throws IOException
+	{
+		BufferedReader br=new BufferedReader(new InputStreamReader(new FileInputStream(textFile)),CHUNK_SIZE);
+
+		try
+		{
+			int[] distances=new int[1<<20];
+			int index=0;
+
+			String input=br.readLine();
+
+			while(input!=null)
+			{
+				if(index==distances.length)
+					distances=Arrays.copyOf(distances,distances.length*2);
+
+				distances[index++]=Integer.parseInt(input);
+				input=br.readLine();
+			}
+
+			return Arrays.copyOf(distances,index);
+		}
+		finally
+		{
+			br.close();
+		}
+	}
+
+	private static boolean fitsInShort(int[] distances)
+	{
+		for(int i=0;i<distances.length;i++)
+			if(distances[i]<Short.MIN_VALUE || distances[i]>Short.MAX_VALUE)
+				return false;
+
+		return true;
+	}
+
+	private static void write(int[] distances,int bytesPerEntry,File file) throws IOException
+	{
+		RandomAccessFile raf=new RandomAccessFile(file,"rw");
+
+		try
+		{
+			FileChannel channel=raf.getChannel();
+			ByteBuffer buffer=ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(bytesPerEntry).putInt(distances.length);
+
+			for(int i=0;i<distances.length;i++)
+			{
+				if(buffer.remaining()<bytesPerEntry)
+				{
+					buffer.flip();
+
+					while(buffer.hasRemaining())
+						channel.write(buffer);
+
+					buffer.clear();
+				}
+
+				if(bytesPerEntry==2)
+					buffer.putShort((short)distances[i]);
+				else
+					buffer.putInt(distances[i]);
+			}
+
+			buffer.flip();
+
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+
+			channel.force(false);
+			raf.setLength(HEADER_SIZE+(long)bytesPerEntry*distances.length);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package pacman.game.internal;
+
+/*
+ * Storage for the pre-computed shortest path distances of a maze. Since the distances are symmetric, only the lower
+ * triangle of the distance matrix is stored: the distance between nodes i<=j is found at index j*(j+1)/2+i. The
+ * storage layout is left to the implementations: IntDistanceTable keeps 32-bit entries, PackedDistanceTable
+ * keeps 16-bit entries and thus halves the footprint (all distances in the mazes are well below Short.MAX_VALUE).
+ * Both can be backed by a heap array or by a memory-mapped file (see DistanceFile).
+ */
+public abstract class DistanceTable
+{
+	/*
+	 * Returns the shortest path distance between the two nodes. Returns -1 if there is no path (the lair).
+	 */
+	public final int getDistance(int fromNodeIndex,int toNodeIndex)
+	{
+		if(fromNodeIndex==toNodeIndex)
+			return 0;
+		else if(fromNodeIndex<toNodeIndex)
+			return get(((toNodeIndex*(toNodeIndex+1))/2)+fromNodeIndex);
+		else
+			return get(((fromNodeIndex*(fromNodeIndex+1))/2)+toNodeIndex);
+	}
+	
+	/*
+	 * Returns the raw entry at the index specified.
+	 */
+	public abstract int get(int index);
+	
+	/*
+	 * The number of entries in the table.
+	 */
+	public abstract int size();
+	
+	/*
+	 * The number of bytes used by a single entry.
+	 */
+	public abstract int bytesPerEntry();
+	
+	/*
+	 * Returns the number of entries required for a maze with the number of nodes specified.
+	 */
+	public static int numEntries(int numNodes)
+	{
+		return ((numNodes*(numNodes-1))/2)+numNodes;
+	}
+	
+	/*
+	 * Copies the table into a heap-backed table with 32-bit entries.
+	 */
+	public IntDistanceTable toIntTable()
+	{
+		int[] entries=new int[size()];
+		
+		for(int i=0;i<entries.length;i++)
+			entries[i]=get(i);
+		
+		return new IntDistanceTable(entries);
+	}
+	
+	/*
+	 * Copies the table into a heap-backed table with 16-bit entries. Throws an IllegalStateException if any of the
+	 * distances does not fit into 16 bits.
+	 */
+	public PackedDistanceTable toPackedTable()
+	{
+		short[] entries=new short[size()];
+		
+		for(int i=0;i<entries.length;i++)
+		{
+			int distance=get(i);
+			
+			if(distance<Short.MIN_VALUE || distance>Short.MAX_VALUE)
+				throw new IllegalStateException("Distance "+distance+" at index "+i+" does not fit into 16 bits");
+			
+			entries[i]=(short)distance;
+		}
+		
+		return new PackedDistanceTable(entries);
+	}
+}
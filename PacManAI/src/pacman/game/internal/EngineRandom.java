@@ -0,0 +1,136 @@
+package pacman.game.internal;
+
+/*
+ * The pseudo-random number generator of the game: SplitMix64, whose entire state is a single long. Every game has
+ * its own generator, so games simulated on different threads do not contend for a shared generator, and the random
+ * events of a game (global reversals, ghosts choosing a direction at a junction) only depend on its seed and the
+ * moves made. A copy of a game continues the stream of the original exactly, and the state can be read and restored
+ * to undo a time step (see Game.unmakeMove()). split() creates an independent generator for parallel rollouts.
+ * 
+ * Not thread-safe: a generator must only be used by the game that owns it.
+ */
+public final class EngineRandom
+{
+	private static final long GOLDEN_GAMMA=0x9E3779B97F4A7C15L;
+	private static final double DOUBLE_UNIT=0x1.0p-53;
+
+	private long state;
+
+	public EngineRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	private EngineRandom(EngineRandom source)
+	{
+		state=source.state;
+	}
+
+	public void setSeed(long seed)
+	{
+		state=mix(seed);
+	}
+
+	public long nextLong()
+	{
+		return mix(state+=GOLDEN_GAMMA);
+	}
+
+	/*
+	 * Returns a uniformly distributed int in [0,bound).
+	 */
+	public int nextInt(int bound)
+	{
+		if(bound<=0)
+			throw new IllegalArgumentException("bound must be positive");
+
+		//rejection sampling so that all values are equally likely
+		long limit=(1L<<32)-((1L<<32)%bound);
+		long r;
+
+		do
+		{
+			r=nextLong()>>>32;
+		}
+		while(r>=limit);
+
+		return (int)(r%bound);
+	}
+
+	/*
+	 * Returns a uniformly distributed double in [0,1).
+	 */
+	public double nextDouble()
+	{
+		return (nextLong()>>>11)*DOUBLE_UNIT;
+	}
+
+	/*
+	 * Returns a generator with the same state: both produce the same numbers from now on.
+	 */
+	public EngineRandom copy()
+	{
+		return new EngineRandom(this);
+	}
+
+	/*
+	 * Returns a new generator whose numbers are (statistically) independent of those of this one. This advances
+	 * this generator, so splitting is deterministic too.
+	 */
+	public EngineRandom split()
+	{
+		return new EngineRandom(nextLong()^0x6A09E667F3BCC909L);
+	}
+
+	public long getState()
+	{
+		return state;
+	}
+
+	public void setState(long state)
+	{
+		this.state=state;
+	}
+
+	/*
+	 * The same generator for engines that keep the states of many generators in an array (see GameBatch): the
+	 * methods below produce exactly the numbers an EngineRandom with the same state would.
+	 */
+	public static long initialState(long seed)
+	{
+		return mix(seed);
+	}
+
+	public static long nextLong(long[] states,int index)
+	{
+		return mix(states[index]+=GOLDEN_GAMMA);
+	}
+
+	public static int nextInt(long[] states,int index,int bound)
+	{
+		long limit=(1L<<32)-((1L<<32)%bound);
+		long r;
+
+		do
+		{
+			r=nextLong(states,index)>>>32;
+		}
+		while(r>=limit);
+
+		return (int)(r%bound);
+	}
+
+	public static double nextDouble(long[] states,int index)
+	{
+		return (nextLong(states,index)>>>11)*DOUBLE_UNIT;
+	}
+
+	//the SplitMix64 finaliser
+	private static long mix(long z)
+	{
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+
+		return z^(z>>>31);
+	}
+}
@@ -25,4 +25,13 @@ public final class Ghost
 	{
 		return new Ghost(type, currentNodeIndex, edibleTime, lairTime, lastMoveMade);		
 	}
+	
+	public void copyInto(Ghost target)
+	{
+		target.type=type;
+		target.currentNodeIndex=currentNodeIndex;
+		target.edibleTime=edibleTime;
+		target.lairTime=lairTime;
+		target.lastMoveMade=lastMoveMade;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package pacman.game.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Pre-computed distances for the ghosts, who may not reverse: the distance from every node to every other node given
+ * the last move made. The distance only depends on the junction the ghost heads for and the direction in which it
+ * enters that junction, so most of the NUM_MOVES rows of a node are identical. Identical rows of a node are stored
+ * once and an index maps (node, lastMoveMade) to the row. Distances are stored with 16 bits. Where PathsCache cannot
+ * compute a distance (e.g., a move that is impossible at that node) the entry is NOT_AVAILABLE, and the distance has
+ * to be computed by PathsCache directly.
+ *
+ * The table is derived from the PathsCache and stored next to its snapshot. Like the shortest path distances, it is
+ * memory-mapped; it is recomputed if it was created from a different maze file or with a different VERSION. VERSION
+ * must be incremented whenever the distances computed by PathsCache change.
+ *
+ * Layout (little-endian):
+ * 	int		magic number ('PMGD')
+ * 	int		format version
+ * 	long	checksum of the maze file
+ * 	int		number of nodes, number of rows
+ * 	int[]	row index for each node and last move made (node*NUM_MOVES+move)
+ * 	short[]	the rows, one distance per target node
+ */
+final class GhostDistanceTable
+{
+	static final int MAGIC=0x44474D50;
+	static final int VERSION=1;
+	static final int HEADER_SIZE=24;
+	static final int NUM_MOVES=MOVE.values().length;
+	static final short NOT_AVAILABLE=-1;
+
+	private static final MOVE[] MOVES=MOVE.values();
+
+	private final IntBuffer rowIndex;
+	private final ShortBuffer rows;
+	private final int numNodes;
+
+	private GhostDistanceTable(IntBuffer rowIndex,ShortBuffer rows,int numNodes)
+	{
+		this.rowIndex=rowIndex;
+		this.rows=rows;
+		this.numNodes=numNodes;
+	}
+
+	/*
+	 * Returns the distance from a to b for a ghost whose last move was lastMoveMade, or NOT_AVAILABLE.
+	 */
+	int getDistance(int a,int b,MOVE lastMoveMade)
+	{
+		return rows.get(rowIndex.get(a*NUM_MOVES+lastMoveMade.ordinal())*numNodes+b);
+	}
+
+	static File getFile(int mazeIndex)
+	{
+		return new File(pathCaches+System.getProperty("file.separator")+nodeNames[mazeIndex]+".ghosts");
+	}
+
+	/*
+	 * Maps the table of the maze, computing it from the cache supplied first if there is no valid table yet. If the
+	 * table cannot be written, it is kept on the heap instead.
+	 */
+	static GhostDistanceTable load(PathsCache cache,int mazeIndex)
+	{
+		int numNodes=cache.nodes.length;
+		File file=getFile(mazeIndex);
+		long checksum=0;
+
+		try
+		{
+			checksum=PathsCacheSnapshot.checksum(mazeIndex);
+
+			if(file.exists())
+			{
+				GhostDistanceTable table=map(file,checksum,numNodes);
+
+				if(table!=null)
+					return table;
+			}
+		}
+		catch(IOException ioe)
+		{
+			//recompute below
+		}
+
+		int[] index=new int[numNodes*NUM_MOVES];
+		short[] rows=compute(cache,index);
+
+		try
+		{
+			write(file,checksum,numNodes,index,rows);
+
+			GhostDistanceTable table=map(file,checksum,numNodes);
+
+			if(table!=null)
+				return table;
+		}
+		catch(IOException ioe)
+		{
+			System.err.println("Could not save the ghost distance table ("+ioe.getMessage()+")");
+		}
+
+		return new GhostDistanceTable(IntBuffer.wrap(index),ShortBuffer.wrap(rows),numNodes);
+	}
+
+	/*
+	 * Computes the distinct rows of all nodes and fills in the row index. Returns the rows.
+	 */
+	private static short[] compute(PathsCache cache,int[] index)
+	{
+		int numNodes=cache.nodes.length;
+		short[] rows=new short[numNodes*8];
+		int numRows=0;
+
+		for(int a=0;a<numNodes;a++)
+		{
+			int firstRow=numRows;
+
+			for(int m=0;m<NUM_MOVES;m++)
+			{
+				if(rows.length<(numRows+1)*numNodes)
+					rows=Arrays.copyOf(rows,rows.length*2);
+
+				int offset=numRows*numNodes;
+
+				for(int b=0;b<numNodes;b++)
+				{
+					int distance=cache.computePathDistanceFromA2B(a,b,MOVES[m]);
+					rows[offset+b]=distance>=0 && distance<=Short.MAX_VALUE ? (short)distance : NOT_AVAILABLE;
+				}
+
+				//reuse an identical row of the same node if there is one
+				int row=numRows;
+
+				for(int r=firstRow;r<numRows && row==numRows;r++)
+					if(equalRows(rows,r*numNodes,offset,numNodes))
+						row=r;
+
+				index[a*NUM_MOVES+m]=row;
+
+				if(row==numRows)
+					numRows++;
+			}
+		}
+
+		return Arrays.copyOf(rows,numRows*numNodes);
+	}
+
+	private static boolean equalRows(short[] rows,int first,int second,int length)
+	{
+		for(int i=0;i<length;i++)
+			if(rows[first+i]!=rows[second+i])
+				return false;
+
+		return true;
+	}
+
+	private static GhostDistanceTable map(File file,long checksum,int numNodes) throws IOException
+	{
+		RandomAccessFile raf=new RandomAccessFile(file,"r");
+
+		try
+		{
+			FileChannel channel=raf.getChannel();
+
+			if(channel.size()<HEADER_SIZE)
+				return null;
+
+			MappedByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			int numRows=buffer.getInt(20);
+			long indexBytes=4L*numNodes*NUM_MOVES;
+
+			if(buffer.getInt(0)!=MAGIC || buffer.getInt(4)!=VERSION || buffer.getLong(8)!=checksum || buffer.getInt(16)!=numNodes
+					|| channel.size()!=HEADER_SIZE+indexBytes+2L*numRows*numNodes)
+				return null;
+
+			buffer.position(HEADER_SIZE);
+			IntBuffer index=buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			index.limit(numNodes*NUM_MOVES);
+
+			buffer.position(HEADER_SIZE+(int)indexBytes);
+			ShortBuffer rows=buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+
+			for(int i=0;i<index.limit();i++)
+				if(index.get(i)<0 || index.get(i)>=numRows)
+					return null;
+
+			return new GhostDistanceTable(index,rows,numNodes);
+		}
+		finally
+		{
+			raf.close();		//the mapping remains valid after the channel is closed
+		}
+	}
+
+	/*
+	 * Writes the table to a temporary file first which is then renamed, so concurrent processes never map a partially
+	 * written table.
+	 */
+	private static void write(File target,long checksum,int numNodes,int[] index,short[] rows) throws IOException
+	{
+		File directory=target.getAbsoluteFile().getParentFile();
+
+		if(!directory.exists())
+			directory.mkdirs();
+
+		File tmp=File.createTempFile(target.getName(),".tmp",directory);
+
+		try
+		{
+			RandomAccessFile raf=new RandomAccessFile(tmp,"rw");
+
+			try
+			{
+				ByteBuffer buffer=ByteBuffer.allocate(HEADER_SIZE+4*index.length+2*rows.length).order(ByteOrder.LITTLE_ENDIAN);
+
+				buffer.putInt(MAGIC).putInt(VERSION).putLong(checksum).putInt(numNodes).putInt(rows.length/numNodes);
+				buffer.asIntBuffer().put(index);
+				buffer.position(HEADER_SIZE+4*index.length);
+				buffer.asShortBuffer().put(rows);
+				buffer.position(0);
+
+				FileChannel channel=raf.getChannel();
+
+				while(buffer.hasRemaining())
+					channel.write(buffer);
+
+				channel.force(false);
+			}
+			finally
+			{
+				raf.close();
+			}
+
+			Files.move(tmp.toPath(),target.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			tmp.delete();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package pacman.game.internal;
+
+import java.nio.IntBuffer;
+
+/*
+ * Distance table with 32-bit entries.
+ */
+public final class IntDistanceTable extends DistanceTable
+{
+	private final IntBuffer entries;
+	
+	public IntDistanceTable(int[] entries)
+	{
+		this(IntBuffer.wrap(entries));
+	}
+	
+	public IntDistanceTable(IntBuffer entries)
+	{
+		this.entries=entries;
+	}
+	
+	public int get(int index)
+	{
+		return entries.get(index);
+	}
+	
+	public int size()
+	{
+		return entries.capacity();
+	}
+	
+	public int bytesPerEntry()
+	{
+		return 4;
+	}
+}
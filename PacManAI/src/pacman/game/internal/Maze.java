@@ -1,11 +1,12 @@
 package pacman.game.internal;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 //import java.util.EnumMap;
-//import pacman.game.Constants.MOVE;
+import pacman.game.Constants.MOVE;
 
 import static pacman.game.Constants.*;
 
@@ -18,11 +19,17 @@ import static pacman.game.Constants.*;
 public final class Maze
 {
 	public AStar astar;
-	public int[] shortestPathDistances,pillIndices,powerPillIndices,junctionIndices;	//Information for the controllers
+	public DistanceTable shortestPathDistances;											//Pre-computed distances (memory-mapped)
+	public int[] pillIndices,powerPillIndices,junctionIndices;							//Information for the controllers
 	public int initialPacManNodeIndex,lairNodeIndex,initialGhostNodeIndex;				//Maze-specific information
 	public Node[] graph;																//The actual maze, stored as a graph (set of nodes)
 	public String name;																	//Name of the Maze
 	
+	public static final int NUM_DIRECTIONS=4;											//UP, RIGHT, DOWN, LEFT (the MOVE ordinals)
+	public int[] neighbours;															//Neighbour of node i for move m at i*NUM_DIRECTIONS+m, -1 if none
+	public int[] possibleMoves;															//Bit m of entry i is set if move m is possible at node i
+	public int[] xCoords,yCoords;														//Coordinates of the nodes
+	
 	/*
 	 * Each maze is stored as a (connected) graph: all nodes have neighbours, stored in an array of length 4. The
 	 * index of the array associates the direction the neighbour is located at: '[up,right,down,left]'.
@@ -32,12 +39,19 @@ public final class Maze
 	 */		
 	public Maze(int index)
 	{
+		long time=StartupTimer.start();
+		
 		loadNodes(nodeNames[index]);
+		createAdjacency();
+		time=StartupTimer.record(index,StartupTimer.Phase.NODES,time);
+		
 		loadDistances(distNames[index]);
+		time=StartupTimer.record(index,StartupTimer.Phase.DISTANCES,time);
 		
 		//create A* graph for shortest paths for the ghosts
 		astar=new AStar();
 		astar.createGraph(graph);
+		StartupTimer.record(index,StartupTimer.Phase.ASTAR_GRAPH,time);
 	}
 	
 	//Loads all the nodes from files and initialises all maze-specific information.
@@ -93,31 +107,98 @@ public final class Maze
         }
 	}
 	
+	/*
+	 * Creates flat copies of the neighbourhoods and coordinates of the nodes. The graph stores the neighbours in EnumMaps of
+	 * boxed Integers; the engine and the helper methods of Game use these arrays instead so the game can be simulated
+	 * without unboxing or iterating over maps.
+	 */
+	private void createAdjacency()
+	{
+		neighbours=new int[graph.length*NUM_DIRECTIONS];
+		possibleMoves=new int[graph.length];
+		xCoords=new int[graph.length];
+		yCoords=new int[graph.length];
+		
+		MOVE[] moves=MOVE.values();
+		
+		for(int i=0;i<graph.length;i++)
+		{
+			for(int m=0;m<NUM_DIRECTIONS;m++)
+			{
+				Integer neighbour=graph[i].neighbourhood.get(moves[m]);
+				
+				if(neighbour!=null)
+				{
+					neighbours[i*NUM_DIRECTIONS+m]=neighbour;
+					possibleMoves[i]|=1<<m;
+				}
+				else
+					neighbours[i*NUM_DIRECTIONS+m]=-1;
+			}
+			
+			xCoords[i]=graph[i].x;
+			yCoords[i]=graph[i].y;
+		}
+	}
+	
+	/*
+	 * Returns the node reached from the node specified by making the move, or -1 if the move is not possible (this
+	 * includes NEUTRAL and null).
+	 */
+	public int getNeighbour(int nodeIndex,MOVE move)
+	{
+		if(move==null || move==MOVE.NEUTRAL)
+			return -1;
+		
+		return neighbours[nodeIndex*NUM_DIRECTIONS+move.ordinal()];
+	}
+	
+	/*
+	 * Returns the possible moves at the node specified as a bit mask (bit m corresponds to MOVE.values()[m]), excluding
+	 * the opposite of the last move made.
+	 */
+	public int getPossibleMoves(int nodeIndex,MOVE lastMoveMade)
+	{
+		if(lastMoveMade==null || lastMoveMade==MOVE.NEUTRAL)
+			return possibleMoves[nodeIndex];
+		
+		return possibleMoves[nodeIndex]&~(1<<lastMoveMade.opposite().ordinal());
+	}
+	
 	/*
 	 * Loads the shortest path distances which have been pre-computed. The data contains the shortest distance from
 	 * any node in the maze to any other node. Since the graph is symmetric, the symmetries have been removed to preserve
-	 * memory and all distances are stored in a 1D array; they are looked-up using getDistance(-). 
+	 * memory and all distances are stored in a 1D table; they are looked-up using getDistance(-).
+	 * 
+	 * The distances are memory-mapped from the binary version of the file (see DistanceFile), which is created from the
+	 * text file the first time it is needed, using 16-bit entries. If the binary file can neither be created nor mapped (e.g., the data directory
+	 * is read-only), the text file is parsed instead.
 	 */
 	private void loadDistances(String fileName)
 	{
-		this.shortestPathDistances=new int[((graph.length*(graph.length-1))/2)+graph.length];
+		String textFile=pathDistances+System.getProperty("file.separator")+fileName;
+		String binaryFile=textFile+DistanceFile.EXTENSION;
+		int numEntries=DistanceTable.numEntries(graph.length);
 		
         try
         {
-        	BufferedReader br=new BufferedReader(new InputStreamReader(new FileInputStream(pathDistances+System.getProperty("file.separator")+fileName)));
-            String input=br.readLine();
-            
-            int index=0;
-            
-            while(input!=null)
-            {	
-            	shortestPathDistances[index++]=Integer.parseInt(input);
-                input=br.readLine();
-            }
+        	if(!new File(binaryFile).exists())
+        		DistanceFile.convert(textFile,binaryFile,true);
+        	
+        	this.shortestPathDistances=DistanceFile.map(binaryFile,numEntries);
         }
         catch(IOException ioe)
         {
-            ioe.printStackTrace();
+        	System.err.println("Could not map "+binaryFile+" ("+ioe.getMessage()+"), reading "+textFile+" instead");
+        	
+        	try
+        	{
+        		this.shortestPathDistances=new IntDistanceTable(DistanceFile.readText(textFile)).toPackedTable();
+        	}
+        	catch(IOException e)
+        	{
+        		e.printStackTrace();
+        	}
         }
 	}
 }
\ No newline at end of file
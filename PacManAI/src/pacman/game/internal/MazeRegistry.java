@@ -0,0 +1,141 @@
+package pacman.game.internal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Holds the mazes and their paths caches. Both are loaded on demand the first time a maze is used so that a game on
+ * maze A does not have to wait for the other mazes. Since the game moves on to the next maze after every level, a
+ * background warm-up may be started that loads the remaining mazes and caches in parallel on a small pool of daemon
+ * threads; a game that reaches a maze still being loaded simply waits for it.
+ */
+public final class MazeRegistry
+{
+	private static final AtomicReferenceArray<Maze> mazes=new AtomicReferenceArray<Maze>(NUM_MAZES);
+	private static final AtomicReferenceArray<PathsCache> caches=new AtomicReferenceArray<PathsCache>(NUM_MAZES);
+	private static final Object[] mazeLocks=new Object[NUM_MAZES];
+	private static final Object[] cacheLocks=new Object[NUM_MAZES];
+	private static ExecutorService warmUpPool;
+	
+	static
+	{
+		for(int i=0;i<NUM_MAZES;i++)
+		{
+			mazeLocks[i]=new Object();
+			cacheLocks[i]=new Object();
+		}
+	}
+	
+	private MazeRegistry(){}
+	
+	/*
+	 * Returns the maze with the index specified, loading it if required.
+	 */
+	public static Maze getMaze(int index)
+	{
+		Maze maze=mazes.get(index);
+		
+		if(maze!=null)
+			return maze;
+		
+		synchronized(mazeLocks[index])
+		{
+			maze=mazes.get(index);
+			
+			if(maze==null)
+			{
+				maze=new Maze(index);
+				mazes.set(index,maze);
+			}
+			
+			return maze;
+		}
+	}
+	
+	/*
+	 * Returns the paths cache of the maze with the index specified, building it if required.
+	 */
+	public static PathsCache getCache(int index)
+	{
+		PathsCache cache=caches.get(index);
+		
+		if(cache!=null)
+			return cache;
+		
+		synchronized(cacheLocks[index])
+		{
+			cache=caches.get(index);
+			
+			if(cache==null)
+			{
+				cache=new PathsCache(index);
+				caches.set(index,cache);
+			}
+			
+			return cache;
+		}
+	}
+	
+	/*
+	 * Starts loading all mazes and caches in the background. Returns immediately; calling it more than once has
+	 * no effect.
+	 */
+	public static synchronized void warmUp()
+	{
+		if(warmUpPool!=null)
+			return;
+		
+		int threads=Math.max(1,Math.min(NUM_MAZES,Runtime.getRuntime().availableProcessors()-1));
+		
+		warmUpPool=Executors.newFixedThreadPool(threads,new ThreadFactory()
+		{
+			private final AtomicInteger count=new AtomicInteger();
+			
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread=new Thread(runnable,"warm-up-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		for(int i=0;i<NUM_MAZES;i++)
+		{
+			final int index=i;
+			
+			warmUpPool.execute(new Runnable()
+			{
+				public void run()
+				{
+					getCache(index);
+				}
+			});
+		}
+		
+		warmUpPool.shutdown();
+	}
+	
+	/*
+	 * Loads all mazes and caches, in parallel, and returns once all of them are available.
+	 */
+	public static void loadAll()
+	{
+		warmUp();
+		
+		for(int i=0;i<NUM_MAZES;i++)
+			getCache(i);
+	}
+	
+	/*
+	 * Whether the maze and its cache have been loaded.
+	 */
+	public static boolean isLoaded(int index)
+	{
+		return caches.get(index)!=null;
+	}
+}
@@ -23,4 +23,12 @@ public final class PacMan
 	{
 		return new PacMan(currentNodeIndex, lastMoveMade, numberOfLivesRemaining, hasReceivedExtraLife);
 	}
+	
+	public void copyInto(PacMan target)
+	{
+		target.currentNodeIndex=currentNodeIndex;
+		target.lastMoveMade=lastMoveMade;
+		target.numberOfLivesRemaining=numberOfLivesRemaining;
+		target.hasReceivedExtraLife=hasReceivedExtraLife;
+	}
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package pacman.game.internal;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 
@@ -21,15 +24,36 @@ import pacman.game.Game;
  *  (a) Looking at all combinations of 2-4 junctions, choosing the shortest path that also takes into account the path to get to either of them.
  *  
  * If one only wants the distance instead of the path, a more efficient method has been implemented that does not need to copy arrays.
+ * For the ghosts, these distances are pre-computed for all nodes and last moves made (see GhostDistanceTable).
+ * 
+ * The junction data is written to a snapshot once computed and loaded from there in subsequent runs (see PathsCacheSnapshot).
  */
 public class PathsCache 
 {	
+	private static final MOVE[] MOVES=MOVE.values();
+	
 	public HashMap<Integer, Integer> junctionIndexConverter;
 	public DNode[] nodes;
 	public Junction[] junctions;
 	public Game game;
+	
+	GhostDistanceTable ghostDistances;
 		
+	/*
+	 * Creates the cache for the maze specified. If it needs to be computed, the junction paths are computed in parallel
+	 * if more than one processor is available.
+	 */
  	public PathsCache(int mazeIndex)
+	{
+ 		this(mazeIndex, Runtime.getRuntime().availableProcessors() > 1);
+	}
+ 	
+	/*
+	 * Creates the cache for the maze specified. If parallel is true and the cache needs to be computed, the A* searches
+	 * from the different source junctions are split across the common fork-join pool. AStar keeps the state of each
+	 * search in per-thread buffers, and the result is identical to the sequential computation.
+	 */
+ 	public PathsCache(int mazeIndex, boolean parallel)
 	{
 		junctionIndexConverter = new HashMap<Integer, Integer>();
 		
@@ -41,11 +65,44 @@ public class PathsCache
 		for (int i = 0; i < jctIndices.length; i++)
 			junctionIndexConverter.put(jctIndices[i], i);
 
+		long time=StartupTimer.start();
+		
+		//use the snapshot written by a previous run if it is still valid
+		boolean loaded=PathsCacheSnapshot.load(this,mazeIndex);
+		time=StartupTimer.record(mazeIndex,StartupTimer.Phase.SNAPSHOT,time);
+		
+		if(!loaded)
+			build(mazeIndex,parallel,time);
+		
+		time=StartupTimer.start();
+		ghostDistances=GhostDistanceTable.load(this,mazeIndex);
+		StartupTimer.record(mazeIndex,StartupTimer.Phase.GHOST_DISTANCES,time);
+	}
+ 	
+ 	//computes the junction data from scratch and writes the snapshot
+ 	private void build(int mazeIndex, boolean parallel, long time)
+ 	{
 		nodes = assignJunctionsToNodes(game);
-		junctions = junctionDistances(game);
+		time=StartupTimer.record(mazeIndex,StartupTimer.Phase.JUNCTION_ASSIGNMENT,time);
+		
+		junctions = junctionDistances(game, parallel);
+		time=StartupTimer.record(mazeIndex,StartupTimer.Phase.JUNCTION_PATHS,time);
 		
 		for(int i=0;i<junctions.length;i++)
 			junctions[i].computeShortestPaths();
+		
+		time=StartupTimer.record(mazeIndex,StartupTimer.Phase.SHORTEST_PATHS,time);
+		
+		try
+		{
+			PathsCacheSnapshot.save(this,mazeIndex);
+		}
+		catch(IOException ioe)
+		{
+			System.err.println("Could not save the paths cache snapshot ("+ioe.getMessage()+")");
+		}
+		
+		StartupTimer.record(mazeIndex,StartupTimer.Phase.SNAPSHOT,time);
 	}
 
 	//for Ms Pac-Man
@@ -100,12 +157,84 @@ public class PathsCache
 	
 	/////// ghosts //////////
 	
-	//To be made more efficient shortly.
 	public int getPathDistanceFromA2B(int a, int b, MOVE lastMoveMade)
 	{
+		int distance=ghostDistances.getDistance(a, b, lastMoveMade);
+		
+		if(distance!=GhostDistanceTable.NOT_AVAILABLE)
+			return distance;
+		
 		return getPathFromA2B(a, b, lastMoveMade).length;
 	}
 	
+	//Same as getPathFromA2B(a,b,lastMoveMade).length, but without creating the path. Returns -1 where the path cannot be computed.
+	int computePathDistanceFromA2B(int a, int b, MOVE lastMoveMade)
+	{
+		//not going anywhere
+		if(a==b)
+			return 0;
+
+		//first, go to closest junction (there is only one since we can't reverse)
+		JunctionData fromJunction = nodes[a].getNearestJunction(lastMoveMade);
+		
+		if(fromJunction==null)
+			return -1;
+		
+		//if target is on the way to junction, then we are done
+		for (int i = 0; i < fromJunction.path.length; i++)
+			if (fromJunction.path[i] == b)
+				return i + 1;
+		
+		int junctionFrom = fromJunction.nodeID;
+		int junctionFromId = junctionIndexConverter.get(junctionFrom);
+		MOVE moveEnteredJunction = fromJunction.lastMove.equals(MOVE.NEUTRAL) ? lastMoveMade : fromJunction.lastMove;
+		
+		ArrayList<JunctionData> junctionsTo=nodes[b].closestJunctions;
+		
+		int minDist = Integer.MAX_VALUE;
+		
+		for (int q = 0; q < junctionsTo.size(); q++) 
+		{
+			JunctionData junctionTo = junctionsTo.get(q);
+			int junctionToId = junctionIndexConverter.get(junctionTo.nodeID);
+			
+			if(junctionFromId==junctionToId)
+			{
+				if(junctionTo.reversePath.length==0)
+					return -1;
+				
+				if(!game.getMoveToMakeToReachDirectNeighbour(junctionFrom, junctionTo.reversePath[0]).equals(moveEnteredJunction.opposite()))
+				{
+					int cutoff=-1;
+					
+					for(int w=0;w<junctionTo.reversePath.length;w++)
+						if(junctionTo.reversePath[w]==b)
+							cutoff=w;
+					
+					minDist = cutoff+1;
+				}
+			}
+			else
+			{
+				EnumMap<MOVE, int[]> paths = junctions[junctionFromId].paths[junctionToId];
+				
+				for (int m = 0; m < MOVES.length; m++) 
+				{
+					int[] path = paths.get(MOVES[m]);
+					
+					if (path!=null && !MOVES[m].opposite().equals(moveEnteredJunction) && !MOVES[m].equals(MOVE.NEUTRAL)) 
+						if (path.length+junctionTo.path.length < minDist)
+							minDist = path.length+junctionTo.path.length;
+				}
+			}
+		}
+		
+		if(minDist==Integer.MAX_VALUE)
+			return -1;
+		
+		return fromJunction.path.length+minDist;
+	}
+	
 	public int[] getPathFromA2B(int a, int b, MOVE lastMoveMade)
 	{
 		//not going anywhere
@@ -185,33 +314,44 @@ public class PathsCache
 //			return concat(fromJunction.path, junctionsTo.get(closestJunction).reversePath);
 	}
 
-	private Junction[] junctionDistances(Game game)
+	private Junction[] junctionDistances(Game game, boolean parallel)
 	{
 		Maze m = game.getCurrentMaze();
 		int[] indices = m.junctionIndices;
 
 		Junction[] junctions = new Junction[indices.length];
 
-		for (int q = 0; q < indices.length; q++)// from
-		{
-			MOVE[] possibleMoves = m.graph[indices[q]].allPossibleMoves.get(MOVE.NEUTRAL);// all possible moves
+		if (parallel)
+			ForkJoinPool.commonPool().invoke(new JunctionTask(game, junctions, 0, indices.length));
+		else
+			for (int q = 0; q < indices.length; q++)// from
+				junctions[q] = computeJunction(game, q, m.astar);
 
-			junctions[q] = new Junction(q, indices[q], indices.length);
+		return junctions;
+	}
+	
+	//computes the paths from junction q to all junctions (including itself) for all exits, using the A* instance supplied
+	static Junction computeJunction(Game game, int q, AStar astar)
+	{
+		Maze m = game.getCurrentMaze();
+		int[] indices = m.junctionIndices;
+		
+		MOVE[] possibleMoves = m.graph[indices[q]].allPossibleMoves.get(MOVE.NEUTRAL);// all possible moves
+
+		Junction junction = new Junction(q, indices[q], indices.length);
 
-			for (int z = 0; z < indices.length; z++)// to (we need to include distance to itself)
+		for (int z = 0; z < indices.length; z++)// to (we need to include distance to itself)
+		{
+			for (int i = 0; i < possibleMoves.length; i++) 
 			{
-				for (int i = 0; i < possibleMoves.length; i++) 
-				{
-					int neighbour = game.getNeighbour(indices[q],possibleMoves[i]);
-					int[] p = m.astar.computePathsAStar(neighbour,indices[z], possibleMoves[i], game);
-					m.astar.resetGraph();
+				int neighbour = game.getNeighbour(indices[q],possibleMoves[i]);
+				int[] p = astar.computePathsAStar(neighbour,indices[z], possibleMoves[i], game);
 
-					junctions[q].addPath(z, possibleMoves[i], p);
-				}
+				junction.addPath(z, possibleMoves[i], p);
 			}
 		}
-
-		return junctions;
+		
+		return junction;
 	}
 
 	private DNode[] assignJunctionsToNodes(Game game)
@@ -285,168 +425,37 @@ public class PathsCache
 	}
 }
 
-class JunctionData 
+// computes the junctions in the range [from,to), splitting the range across the fork-join pool
+class JunctionTask extends RecursiveAction
 {
-	public int nodeID,nodeStartedFrom;
-	public MOVE firstMove, lastMove;
-	public int[] path, reversePath;
-
-	public JunctionData(int nodeID, MOVE firstMove, int nodeStartedFrom, int[] path, MOVE lastMove) 
-	{
-		this.nodeID = nodeID;
-		this.nodeStartedFrom=nodeStartedFrom;
-		this.firstMove = firstMove;
-		this.path = path;
-		this.lastMove = lastMove;
-		
-		if(path.length>0)
-			this.reversePath = getReversePath(path);
-		else
-			reversePath=new int[]{};
-	}
-
-	public int[] getReversePath(int[] path) 
-	{
-		int[] reversePath = new int[path.length];
-
-		for (int i = 1; i < reversePath.length; i++)
-			reversePath[i-1] = path[path.length - 1 - i];
-
-		reversePath[reversePath.length-1]=nodeStartedFrom;
-				
-		return reversePath;
-	}
-
-	public String toString() 
-	{
-		return nodeID + "\t" + firstMove.toString() + "\t" + Arrays.toString(path);
-	}
-}
-
-class DNode 
-{
-	public int nodeID;
-	public ArrayList<JunctionData> closestJunctions;
-	public boolean isJunction;
+	private static final long serialVersionUID = 1L;
+	private static final int THRESHOLD = 4;
 	
-	public DNode(int nodeID, boolean isJunction) 
-	{
-		this.nodeID = nodeID;
-		this.isJunction=isJunction;
-		
-		this.closestJunctions = new ArrayList<JunctionData>();
-		
-		if(isJunction)
-			closestJunctions.add(new JunctionData(nodeID,MOVE.NEUTRAL,nodeID,new int[]{},MOVE.NEUTRAL));
-	}
-
-	public int[] getPathToJunction(MOVE lastMoveMade) 
+	private final Game game;
+	private final Junction[] junctions;
+	private final int from, to;
+	
+	public JunctionTask(Game game, Junction[] junctions, int from, int to)
 	{
-		if(isJunction)
-			return new int[]{};
-		
-		for (int i = 0; i < closestJunctions.size(); i++)
-			if (!closestJunctions.get(i).firstMove.equals(lastMoveMade.opposite()))
-				return closestJunctions.get(i).path;
-
-		return null;
+		this.game = game;
+		this.junctions = junctions;
+		this.from = from;
+		this.to = to;
 	}
-
-	public JunctionData getNearestJunction(MOVE lastMoveMade) 
+	
+	protected void compute()
 	{
-		if(isJunction)
-			return closestJunctions.get(0);
-		
-		int minDist=Integer.MAX_VALUE;
-		int bestIndex=-1;
-		
-		for (int i = 0; i < closestJunctions.size(); i++)
-			if (!closestJunctions.get(i).firstMove.equals(lastMoveMade.opposite()))
-			{
-				int newDist=closestJunctions.get(i).path.length;
-				
-				if(newDist<minDist)
-				{
-					minDist=newDist;
-					bestIndex=i;
-				}
-			}
-
-		if(bestIndex!=-1)
-			return closestJunctions.get(bestIndex);
+		if (to - from <= THRESHOLD)
+		{
+			AStar astar = game.getCurrentMaze().astar;
+			
+			for (int q = from; q < to; q++)
+				junctions[q] = PathsCache.computeJunction(game, q, astar);
+		}
 		else
-			return null;
-	}
-
-	public void addPath(int junctionID, MOVE firstMove, int nodeStartedFrom,int[] path, MOVE lastMove) 
-	{
-		closestJunctions.add(new JunctionData(junctionID, firstMove, nodeStartedFrom,path, lastMove));
-	}
-
-	public String toString() 
-	{
-		return "" + nodeID + "\t" + isJunction;
-	}
-}
-
-// for each junction, stores paths to all other junctions for all directions
-class Junction 
-{
-	public int jctId, nodeId;
-	public EnumMap<MOVE, int[]>[] paths;
-
-	public void computeShortestPaths()
-	{
-		MOVE[] moves=MOVE.values();
-		
-		for(int i=0;i<paths.length;i++)
 		{
-			if(i==jctId)
-				paths[i].put(MOVE.NEUTRAL,new int[]{});
-			else
-			{
-				int distance=Integer.MAX_VALUE;
-				int[] path=null;
-				
-				for(int j=0;j<moves.length;j++)
-				{
-					if(paths[i].containsKey(moves[j]))
-					{
-						int[] tmp=paths[i].get(moves[j]);
-					
-						if(tmp.length<distance)
-						{
-							distance=tmp.length;
-							path=tmp;
-						}
-					}
-				}
-				
-				paths[i].put(MOVE.NEUTRAL,path);
-			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new JunctionTask(game, junctions, from, middle), new JunctionTask(game, junctions, middle, to));
 		}
 	}
-	
-	@SuppressWarnings("unchecked")
-	public Junction(int jctId, int nodeId, int numJcts) 
-	{
-		this.jctId = jctId;
-		this.nodeId = nodeId;
-
-		paths = new EnumMap[numJcts];
-
-		for (int i = 0; i < paths.length; i++)
-			paths[i] = new EnumMap<MOVE, int[]>(MOVE.class);
-	}
-
-	// store the shortest path given the last move made
-	public void addPath(int toJunction, MOVE firstMoveMade, int[] path) 
-	{		
-		paths[toJunction].put(firstMoveMade, path);
-	}
-
-	public String toString() 
-	{
-		return jctId + "\t" + nodeId;
-	}
-}
\ No newline at end of file
+}
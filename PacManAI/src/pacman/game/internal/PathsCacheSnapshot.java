@@ -0,0 +1,277 @@
+package pacman.game.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.zip.CRC32;
+
+import pacman.game.Constants.MOVE;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Binary snapshot of the junction data computed by the PathsCache. Building the cache requires an A* search for every
+ * pair of junctions and every exit direction which takes several hundred milliseconds per maze; loading the snapshot
+ * takes a few milliseconds. A snapshot is only used if it was created from the same maze file (verified using a CRC32
+ * checksum of the file) with the same version of the format and algorithm; otherwise the cache is recomputed and the
+ * snapshot is replaced. VERSION must be incremented whenever the paths computed by PathsCache change.
+ * 
+ * Layout (big-endian):
+ * 	int		magic number ('PMPC')
+ * 	int		format version
+ * 	long	checksum of the maze file
+ * 	int		number of nodes, number of junctions
+ * 	nodes:		byte isJunction; if not a junction: int count, then count times 
+ * 				{int junction, int nodeStartedFrom, byte firstMove, byte lastMove, int length, int[] path}
+ * 	junctions:	int nodeIndex, then for every target junction: byte mask of the moves present, then for each of 
+ * 				these moves (in MOVE order): int length, int[] path
+ * 	int		CRC32 checksum of all the preceding bytes, so a damaged snapshot is recomputed rather than used
+ * 
+ * The paths for MOVE.NEUTRAL are not stored; they are derived using Junction.computeShortestPaths().
+ */
+final class PathsCacheSnapshot
+{
+	static final int MAGIC=0x43504D50;
+	static final int VERSION=2;
+	
+	private static final MOVE[] MOVES=MOVE.values();
+	
+	private PathsCacheSnapshot(){}
+	
+	static File getFile(int mazeIndex)
+	{
+		return new File(pathCaches+System.getProperty("file.separator")+nodeNames[mazeIndex]+".cache");
+	}
+	
+	/*
+	 * Computes the checksum of the maze file the cache is created from.
+	 */
+	static long checksum(int mazeIndex) throws IOException
+	{
+		CRC32 crc=new CRC32();
+		crc.update(Files.readAllBytes(new File(pathMazes+System.getProperty("file.separator")+nodeNames[mazeIndex]+".txt").toPath()));
+		
+		return crc.getValue();
+	}
+	
+	/*
+	 * Loads the snapshot into the cache supplied. Returns false if there is no valid snapshot for the maze, in which
+	 * case the cache is left untouched.
+	 */
+	static boolean load(PathsCache cache,int mazeIndex)
+	{
+		File file=getFile(mazeIndex);
+		
+		if(!file.exists())
+			return false;
+		
+		try
+		{
+			byte[] bytes=Files.readAllBytes(file.toPath());
+			Maze maze=cache.game.getCurrentMaze();
+			
+			if(bytes.length<4)
+				return false;
+			
+			//the checksum at the end covers all the other bytes, which are all that is parsed
+			ByteBuffer buffer=ByteBuffer.wrap(bytes,0,bytes.length-4);
+			CRC32 crc=new CRC32();
+			crc.update(bytes,0,bytes.length-4);
+			
+			if((int)crc.getValue()!=ByteBuffer.wrap(bytes,bytes.length-4,4).getInt())
+				return false;
+			
+			if(buffer.getInt()!=MAGIC || buffer.getInt()!=VERSION || buffer.getLong()!=checksum(mazeIndex))
+				return false;
+			
+			int numNodes=buffer.getInt();
+			int numJunctions=buffer.getInt();
+			
+			if(numNodes!=maze.graph.length || numJunctions!=maze.junctionIndices.length)
+				return false;
+			
+			DNode[] nodes=new DNode[numNodes];
+			
+			for(int i=0;i<numNodes;i++)
+			{
+				nodes[i]=new DNode(i,buffer.get()==1);
+				
+				if(!nodes[i].isJunction)
+				{
+					int count=buffer.getInt();
+					
+					for(int j=0;j<count;j++)
+					{
+						int junction=buffer.getInt();
+						int nodeStartedFrom=buffer.getInt();
+						MOVE firstMove=MOVES[buffer.get()];
+						MOVE lastMove=MOVES[buffer.get()];
+						
+						nodes[i].addPath(junction,firstMove,nodeStartedFrom,readPath(buffer),lastMove);
+					}
+				}
+			}
+			
+			Junction[] junctions=new Junction[numJunctions];
+			
+			for(int q=0;q<numJunctions;q++)
+			{
+				junctions[q]=new Junction(q,buffer.getInt(),numJunctions);
+				
+				for(int z=0;z<numJunctions;z++)
+				{
+					int mask=buffer.get();
+					
+					for(int m=0;m<MOVES.length;m++)
+						if((mask&(1<<m))!=0)
+							junctions[q].addPath(z,MOVES[m],readPath(buffer));
+				}
+				
+				junctions[q].computeShortestPaths();
+			}
+			
+			if(buffer.hasRemaining())
+				return false;
+			
+			cache.nodes=nodes;
+			cache.junctions=junctions;
+			
+			return true;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+		catch(BufferUnderflowException e)	//truncated file
+		{
+			return false;
+		}
+		catch(RuntimeException e)	//corrupt file, e.g., node indices out of range
+		{
+			return false;
+		}
+	}
+	
+	/*
+	 * Writes the snapshot of the cache supplied. The snapshot is written to a temporary file first which is then
+	 * renamed, so concurrent processes never read a partially written snapshot.
+	 */
+	static void save(PathsCache cache,int mazeIndex) throws IOException
+	{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream(1<<20);
+		DataOutputStream out=new DataOutputStream(bytes);
+		
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(checksum(mazeIndex));
+		out.writeInt(cache.nodes.length);
+		out.writeInt(cache.junctions.length);
+		
+		for(DNode node : cache.nodes)
+		{
+			out.writeByte(node.isJunction ? 1 : 0);
+			
+			if(!node.isJunction)
+			{
+				ArrayList<JunctionData> closestJunctions=node.closestJunctions;
+				out.writeInt(closestJunctions.size());
+				
+				for(JunctionData data : closestJunctions)
+				{
+					out.writeInt(data.nodeID);
+					out.writeInt(data.nodeStartedFrom);
+					out.writeByte(data.firstMove.ordinal());
+					out.writeByte(data.lastMove.ordinal());
+					writePath(out,data.path);
+				}
+			}
+		}
+		
+		for(Junction junction : cache.junctions)
+		{
+			out.writeInt(junction.nodeId);
+			
+			for(EnumMap<MOVE,int[]> paths : junction.paths)
+			{
+				int mask=0;
+				
+				for(int m=0;m<MOVES.length;m++)
+					if(MOVES[m]!=MOVE.NEUTRAL && paths.containsKey(MOVES[m]))
+						mask|=1<<m;
+				
+				out.writeByte(mask);
+				
+				for(int m=0;m<MOVES.length;m++)
+					if((mask&(1<<m))!=0)
+						writePath(out,paths.get(MOVES[m]));
+			}
+		}
+		
+		out.flush();
+		
+		CRC32 crc=new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeInt((int)crc.getValue());
+		out.flush();
+		
+		File target=getFile(mazeIndex);
+		File directory=target.getAbsoluteFile().getParentFile();
+		
+		if(!directory.exists())
+			directory.mkdirs();
+		
+		File tmp=File.createTempFile(target.getName(),".tmp",directory);
+		
+		try
+		{
+			FileOutputStream fos=new FileOutputStream(tmp);
+			
+			try
+			{
+				bytes.writeTo(fos);
+			}
+			finally
+			{
+				fos.close();
+			}
+			
+			Files.move(tmp.toPath(),target.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally
+		{
+			tmp.delete();
+		}
+	}
+	
+	private static int[] readPath(ByteBuffer buffer)
+	{
+		int length=buffer.getInt();
+		
+		//a corrupt length must not allocate a huge (or negative) array
+		if(length<0 || length>buffer.remaining()/4)
+			throw new BufferUnderflowException();
+		
+		int[] path=new int[length];
+		
+		for(int i=0;i<path.length;i++)
+			path[i]=buffer.getInt();
+		
+		return path;
+	}
+	
+	private static void writePath(DataOutputStream out,int[] path) throws IOException
+	{
+		out.writeInt(path.length);
+		
+		for(int i=0;i<path.length;i++)
+			out.writeInt(path[i]);
+	}
+}
@@ -0,0 +1,108 @@
+package pacman.game.internal;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Records how long each phase of loading a maze takes. Mazes and their caches are loaded on demand (see MazeRegistry),
+ * possibly on several threads at once, so the report lists the time spent in each phase per maze as well as the
+ * wall-clock time since the class was first used.
+ */
+public final class StartupTimer
+{
+	public enum Phase
+	{
+		NODES("nodes"),
+		DISTANCES("distances"),
+		ASTAR_GRAPH("A* graph"),
+		JUNCTION_ASSIGNMENT("node->junction paths"),
+		JUNCTION_PATHS("junction->junction paths"),
+		SHORTEST_PATHS("shortest junction paths"),
+		SNAPSHOT("paths snapshot load/save"),
+		GHOST_DISTANCES("ghost distance table");
+		
+		public final String description;
+		
+		Phase(String description)
+		{
+			this.description=description;
+		}
+	};
+	
+	private static final long origin=System.nanoTime();
+	private static final long[][] nanos=new long[NUM_MAZES][Phase.values().length];
+	private static final String[] threads=new String[NUM_MAZES];
+	private static long lastRecorded=origin;
+	
+	private StartupTimer(){}
+	
+	/*
+	 * Returns the current time to be passed to record(-) once the phase is complete.
+	 */
+	public static long start()
+	{
+		return System.nanoTime();
+	}
+	
+	/*
+	 * Records the time spent in a phase that started at the time specified. Returns the current time so that
+	 * consecutive phases can be chained.
+	 */
+	public static synchronized long record(int mazeIndex,Phase phase,long start)
+	{
+		long now=System.nanoTime();
+		
+		nanos[mazeIndex][phase.ordinal()]+=now-start;
+		threads[mazeIndex]=Thread.currentThread().getName();
+		lastRecorded=Math.max(lastRecorded,now);
+		
+		return now;
+	}
+	
+	/*
+	 * Returns a table with the time in milliseconds spent in each phase, per maze.
+	 */
+	public static synchronized String getReport()
+	{
+		Phase[] phases=Phase.values();
+		StringBuilder sb=new StringBuilder();
+		
+		sb.append(String.format("%-26s",""));
+		
+		for(int i=0;i<NUM_MAZES;i++)
+			sb.append(String.format("%10s",nodeNames[i]));
+		
+		sb.append(String.format("%10s%n","total"));
+		
+		double sum=0;
+		
+		for(Phase phase : phases)
+		{
+			double total=0;
+			sb.append(String.format("%-26s",phase.description));
+			
+			for(int i=0;i<NUM_MAZES;i++)
+			{
+				double ms=nanos[i][phase.ordinal()]/1e6;
+				total+=ms;
+				sb.append(String.format("%10.1f",ms));
+			}
+			
+			sb.append(String.format("%10.1f%n",total));
+			sum+=total;
+		}
+		
+		sb.append(String.format("%-26s","loaded on"));
+		
+		for(int i=0;i<NUM_MAZES;i++)
+			sb.append(String.format("%10s",threads[i]==null ? "-" : abbreviate(threads[i])));
+		
+		sb.append(String.format("%n%-26s%10.1f ms (%.1f ms of work)%n","wall clock",(lastRecorded-origin)/1e6,sum));
+		
+		return sb.toString();
+	}
+	
+	private static String abbreviate(String name)
+	{
+		return name.length()<=9 ? name : name.substring(name.length()-9);
+	}
+}
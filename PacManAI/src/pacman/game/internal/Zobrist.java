@@ -0,0 +1,55 @@
+package pacman.game.internal;
+
+import static pacman.game.Constants.*;
+
+/*
+ * Zobrist keys for hashing the state of a game (see Game.stateHash()). The hash of a state is the exclusive or of
+ * one key per feature (e.g., "Blinky is at node 42"), so a feature that changes is removed from the hash by xoring
+ * its key again and the hash can be updated incrementally. Rather than storing random tables, whose size would
+ * depend on the mazes and the maximum edible and lair times, the key of a feature is derived from the feature by
+ * the SplitMix64 finaliser: the keys are as good as random ones and the same in every JVM.
+ */
+public final class Zobrist
+{
+	//features; the features of a ghost are offset by GHOST_FEATURES*ghost.ordinal()
+	public static final int PILL=0, POWER_PILL=1, MAZE=2, PACMAN_NODE=3, PACMAN_MOVE=4, LIVES=5;
+	public static final int GHOST_NODE=6, GHOST_MOVE=7, GHOST_EDIBLE=8, GHOST_LAIR=9;
+	public static final int GHOST_FEATURES=4;
+	public static final int NUM_FEATURES=GHOST_NODE+GHOST_FEATURES*NUM_GHOSTS;
+	
+	private Zobrist(){}
+	
+	/*
+	 * Returns the key of the feature with the value supplied.
+	 */
+	public static long key(int feature,int value)
+	{
+		long z=((long)feature<<32|(value&0xFFFFFFFFL))*0x9E3779B97F4A7C15L;
+		
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		
+		return z^(z>>>31);
+	}
+	
+	/*
+	 * Returns the key of a feature of a ghost.
+	 */
+	public static long ghostKey(int feature,int ghost,int value)
+	{
+		return key(feature+GHOST_FEATURES*ghost,value);
+	}
+	
+	/*
+	 * Returns the exclusive or of the keys of values 0 (inclusive) to to (exclusive) of the feature.
+	 */
+	public static long keys(int feature,int to)
+	{
+		long hash=0;
+		
+		for(int i=0;i<to;i++)
+			hash^=key(feature,i);
+		
+		return hash;
+	}
+}